@@ -0,0 +1,197 @@
+package com.moonlite.discover;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ *
+ * @author Dahai Li
+ *
+ * The Java Flight Recorder event types of Events, in the "Discover" category. Only Events uses this
+ * class, through Events.Sink, and only when it can be loaded.
+ * It is in the jfr source set, which is compiled for Java 11, as jdk.jfr is not in the Java 8 API,
+ * while the rest stays at Java 8.
+ * An event is created only while it is enabled in a recording. Its fields are filled in only if it is
+ * going to be committed, e.g) not when it is below the threshold of the recording.
+ *
+ * @see Events
+ */
+final class JfrEvents implements Events.Sink {
+	/***
+	 * One of each type that is never committed, to ask whether the type is enabled.
+	 */
+	private static final ProcessRun PROCESS = new ProcessRun();
+	private static final XmlParse PARSE = new XmlParse();
+	private static final HttpsFetch FETCH = new HttpsFetch();
+	private static final ConfigurationBuild CONFIGURATION = new ConfigurationBuild();
+
+	JfrEvents () {
+	}
+
+	@Name("com.moonlite.discover.ProcessRun")
+	@Label("Process Run")
+	@Category("Discover")
+	@Description("An external command, e.g) nmap, from start to exit")
+	static class ProcessRun extends Event {
+		@Label("Command")
+		String command;
+
+		@Label("Exit Code")
+		int exitCode;
+
+		@Label("Stdout")
+		@Description("-1 if stdout was not read")
+		@DataAmount
+		long stdoutBytes;
+	}
+
+	@Name("com.moonlite.discover.XmlParse")
+	@Label("XML Parse")
+	@Category("Discover")
+	@Description("Parsing an nmap xml file")
+	static class XmlParse extends Event {
+		@Label("Parser")
+		String parser;
+
+		@Label("File")
+		String file;
+
+		@Label("Size")
+		@DataAmount
+		long bytes;
+
+		@Label("Hosts")
+		int hosts;
+	}
+
+	@Name("com.moonlite.discover.HttpsFetch")
+	@Label("HTTPS Fetch")
+	@Category("Discover")
+	@Description("A GET request of ApacheHttpClient or PooledHttpClient")
+	static class HttpsFetch extends Event {
+		@Label("URL")
+		String url;
+
+		@Label("Response Size")
+		@DataAmount
+		long bytes;
+
+		@Label("Error")
+		String error;
+	}
+
+	@Name("com.moonlite.discover.ConfigurationBuild")
+	@Label("ASA Configuration Build")
+	@Category("Discover")
+	@Description("Extracting the configuration of a network from an ASA running-config")
+	static class ConfigurationBuild extends Event {
+		@Label("Network")
+		String network;
+
+		@Label("Lines")
+		int lines;
+
+		@Label("Commands")
+		int commands;
+
+		@Label("Extracted Commands")
+		int extracted;
+	}
+
+	@Override
+	public Object beginProcess () {
+		if (!PROCESS.isEnabled()) {
+			return null;
+		}
+		ProcessRun event = new ProcessRun();
+		event.begin();
+		return event;
+	}
+
+	@Override
+	public void endProcess (Object span, String[] command, int exitCode, long stdoutBytes) {
+		ProcessRun event = (ProcessRun) span;
+		event.end();
+		if (event.shouldCommit()) {
+			event.command = String.join(" ", command);
+			event.exitCode = exitCode;
+			event.stdoutBytes = stdoutBytes;
+			event.commit();
+		}
+	}
+
+	@Override
+	public Object beginParse () {
+		if (!PARSE.isEnabled()) {
+			return null;
+		}
+		XmlParse event = new XmlParse();
+		event.begin();
+		return event;
+	}
+
+	@Override
+	public void endParse (Object span, String parser, String fileName, int hosts) {
+		XmlParse event = (XmlParse) span;
+		event.end();
+		if (event.shouldCommit()) {
+			event.parser = parser;
+			event.file = fileName;
+			event.bytes = new File(fileName).length();
+			event.hosts = hosts;
+			event.commit();
+		}
+	}
+
+	@Override
+	public Object beginFetch () {
+		if (!FETCH.isEnabled()) {
+			return null;
+		}
+		HttpsFetch event = new HttpsFetch();
+		event.begin();
+		return event;
+	}
+
+	@Override
+	public void endFetch (Object span, String url, String body, Throwable error) {
+		HttpsFetch event = (HttpsFetch) span;
+		event.end();
+		if (event.shouldCommit()) {
+			event.url = url;
+			event.bytes = body == null ? 0 : body.getBytes(StandardCharsets.UTF_8).length;
+			event.error = error == null ? null : error.toString();
+			event.commit();
+		}
+	}
+
+	@Override
+	public Object beginConfiguration () {
+		if (!CONFIGURATION.isEnabled()) {
+			return null;
+		}
+		ConfigurationBuild event = new ConfigurationBuild();
+		event.begin();
+		return event;
+	}
+
+	@Override
+	public void endConfiguration (Object span, String network, int lines, int commands, int extracted) {
+		ConfigurationBuild event = (ConfigurationBuild) span;
+		event.end();
+		if (event.shouldCommit()) {
+			event.network = network;
+			event.lines = lines;
+			event.commands = commands;
+			event.extracted = extracted;
+			event.commit();
+		}
+	}
+}
@@ -0,0 +1,87 @@
+package com.moonlite.discover;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.Test;
+
+public class EventsTest {
+
+	private String getFilePath(String fileName) {
+		ClassLoader classLoader = getClass().getClassLoader();
+		String dirPath = getClass().getPackage().getName().replace('.', '/');
+		return classLoader.getResource(dirPath + "/" + fileName).getFile();
+	}
+
+	@Test
+	public void testNoRecording() {
+		// nothing to allocate when no recording is running
+		assertNull(Events.beginProcess());
+		assertNull(Events.beginParse());
+		assertNull(Events.beginFetch());
+		assertNull(Events.beginConfiguration());
+		Events.endParse(null, "dom", "no-such-file", 0);
+	}
+
+	@Test
+	public void testRecording() throws Exception {
+		String fileName = getFilePath("sample-nmap.xml");
+		Path dump = File.createTempFile("discover", ".jfr").toPath();
+		try (Recording recording = new Recording()) {
+			recording.enable("com.moonlite.discover.ProcessRun");
+			recording.enable("com.moonlite.discover.XmlParse");
+			recording.enable("com.moonlite.discover.ConfigurationBuild");
+			recording.start();
+			Host[] hosts = new NMap().readXMLFile(fileName);
+			new ProcessRunner().run("echo", "hello");
+			String runningConfig = "hostname asa\n!\ninterface GigabitEthernet0/0\n nameif inside\n"
+					+ " ip address 10.0.0.1 255.255.255.0\naccess-group inside_in in interface inside";
+			// one keeps only the commands it uses, the other all of them: both count them all
+			new ASA.Configuration(runningConfig, "10.0.0.0/24");
+			new ASA.Configuration(runningConfig.split("\n"), "10.0.0.0/24");
+			recording.stop();
+			recording.dump(dump);
+
+			List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+			RecordedEvent parse = only(events, "com.moonlite.discover.XmlParse");
+			assertEquals("dom", parse.getString("parser"));
+			assertEquals(fileName, parse.getString("file"));
+			assertEquals(new File(fileName).length(), parse.getLong("bytes"));
+			assertEquals(hosts.length, parse.getInt("hosts"));
+
+			RecordedEvent process = only(events, "com.moonlite.discover.ProcessRun");
+			assertEquals("echo hello", process.getString("command"));
+			assertEquals(0, process.getInt("exitCode"));
+			assertEquals(6, process.getLong("stdoutBytes"));
+
+			List<RecordedEvent> configurations = events.stream()
+					.filter(e -> e.getEventType().getName().equals("com.moonlite.discover.ConfigurationBuild"))
+					.collect(Collectors.toList());
+			assertEquals(2, configurations.size());
+			for (RecordedEvent configuration: configurations) {
+				assertEquals("10.0.0.0/24", configuration.getString("network"));
+				assertEquals(6, configuration.getInt("lines"));
+				assertEquals(3, configuration.getInt("commands"));
+				assertEquals(1, configuration.getInt("extracted"));
+			}
+		} finally {
+			dump.toFile().delete();
+		}
+	}
+
+	private static RecordedEvent only (List<RecordedEvent> events, String type) {
+		List<RecordedEvent> matches = events.stream()
+				.filter(e -> e.getEventType().getName().equals(type))
+				.collect(Collectors.toList());
+		assertEquals(type, 1, matches.size());
+		return matches.get(0);
+	}
+}
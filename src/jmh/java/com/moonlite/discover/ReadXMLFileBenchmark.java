@@ -0,0 +1,108 @@
+package com.moonlite.discover;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ *
+ * @author Dahai Li
+ *
+ * Benchmark of readXMLFile of the nmap readers, on the bundled xml files, and on copies of
+ * www.microsoft.com.xml scaled up by repeating its hosts, e.g) "www.microsoft.com.xml*10".
+ *
+ * Throughput and the latency distribution are measured; run it with "-prof gc", as gradle jmh does,
+ * for the allocation rate.
+ * A new reader joins the benchmark by adding it to READERS, and its name to the parser @Param.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReadXMLFileBenchmark {
+
+	interface Reader {
+		Host[] readXMLFile (String fileName) throws Exception;
+	}
+
+	static final Map<String, Reader> READERS = new LinkedHashMap<>();
+	static {
+		READERS.put("dom", fileName -> new NMap().readXMLFile(fileName));
+		READERS.put("jdom", fileName -> new NMapJDOM().readXMLFile(fileName));
+		READERS.put("stax", fileName -> new NMapStAX().readXMLFile(fileName));
+		READERS.put("mapped", fileName -> new NMapMapped().readXMLFile(fileName));
+	}
+
+	@Param({"dom", "jdom", "stax", "mapped"})
+	public String parser;
+
+	@Param({"sample-nmap.xml", "belize.cisco.com.xml", "www.microsoft.com.xml",
+		"www.microsoft.com.xml*10", "www.microsoft.com.xml*100"})
+	public String file;
+
+	private Reader reader;
+	private File xml;
+
+	@Setup(Level.Trial)
+	public void setup () throws IOException {
+		reader = READERS.get(parser);
+		if (reader == null) {
+			throw new IllegalArgumentException("Unknown parser " + parser + ", not in " + READERS.keySet());
+		}
+		String[] nameAndScale = file.split("\\*");
+		xml = copyResource(nameAndScale[0]);
+		if (nameAndScale.length > 1) {
+			scale(xml, Integer.parseInt(nameAndScale[1]));
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown () {
+		xml.delete();
+	}
+
+	@Benchmark
+	public Host[] readXMLFile () throws Exception {
+		return reader.readXMLFile(xml.getAbsolutePath());
+	}
+
+	private static File copyResource (String name) throws IOException {
+		String path = ReadXMLFileBenchmark.class.getPackage().getName().replace('.', '/') + "/" + name;
+		File result = File.createTempFile("nmap", ".xml");
+		result.deleteOnExit();
+		try (InputStream in = ReadXMLFileBenchmark.class.getClassLoader().getResourceAsStream(path)) {
+			if (in == null) {
+				throw new IOException("No resource " + path);
+			}
+			Files.copy(in, result.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		return result;
+	}
+
+	/**
+	 * Repeat all the <host> elements of the file, so that it has scale times as many hosts.
+	 */
+	static void scale (File xml, int scale) throws IOException {
+		String text = new String(Files.readAllBytes(xml.toPath()), StandardCharsets.UTF_8);
+		int start = text.indexOf("<host ");
+		int end = text.lastIndexOf("</host>") + "</host>".length();
+		String hosts = text.substring(start, end);
+		StringBuilder result = new StringBuilder(text.length() * scale);
+		result.append(text, 0, start);
+		for (int i = 0; i < scale; i++) {
+			result.append(hosts).append('\n');
+		}
+		result.append(text, end, text.length());
+		Files.write(xml.toPath(), result.toString().getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -1,12 +1,19 @@
 package com.moonlite.discover;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import org.apache.commons.net.util.SubnetUtils;
+import org.apache.http.entity.ContentType;
 import org.apache.commons.net.util.SubnetUtils.SubnetInfo;
 
 /**
@@ -30,13 +37,29 @@ public class ASA extends Host {
      * Gather the configuration information of the device.
      * @param network String, the filer used to identify the network of interest.
      *        it must be in CDIR notation, e.g) 1.1.1.0/24.
+     * The connection to the device is kept in PooledHttpClient.shared(), and reused by the next call.
+     * The running-config is parsed as it is received, without holding all of it in memory.
      * @return configuration for the given network, including firewall, QoS, and VLAN configuration.
      * @throws IOException 
      */
     public Configuration getConfiguration(final String network) throws IOException {
         final String path = "https://" +address + "/admin/config";
-        final String cfg  = new ApacheHttpClient().get(path, user, password);
-        return new Configuration(cfg, network);
+        return PooledHttpClient.shared().get(path, user, password, entity -> {
+            final Charset charset = ContentType.getOrDefault(entity).getCharset();
+            return new Configuration(new BufferedReader(new InputStreamReader(entity.getContent(),
+                    charset != null ? charset : StandardCharsets.ISO_8859_1)), network);
+        });
+    }
+
+    /**
+     * Fetch the running-config of the device.
+     * @param client PooledHttpClient
+     * @return String, the running-config
+     * @throws IOException
+     */
+    String getRunningConfig(final PooledHttpClient client) throws IOException {
+        final String path = "https://" +address + "/admin/config";
+        return client.get(path, user, password);
     }
 
 
@@ -262,6 +285,8 @@ public class ASA extends Host {
      *
      */
     static public class Configuration {
+        private static final Metrics.Histogram EXTRACT = Metrics.histogram("asa.configuration");
+
         // The interface that resides in the concerned network.
         public InterfaceCommand intf;
         public int vlan;
@@ -285,26 +310,65 @@ public class ASA extends Host {
         private Set<String> aclNames;
 
         public Configuration(final String runningConfig, final String network) {
-            this(Arrays.asList(runningConfig.split("\n")).
-                    stream().
-                    filter(line -> ! line.startsWith("!")). //skip comments
-                    toArray(String[]::new), 
-                    network);
+            this(Events.beginConfiguration(), System.nanoTime(), readCommands(runningConfig), network);
         }
 
         public Configuration(String[] lines, String network) {
-            final List<Object> commands = CompositeCommand.lines2Commands(lines, 0);
+            this(Events.beginConfiguration(), System.nanoTime(), Commands.parse(lines), network);
+        }
+
+        /**
+         * Parse the running-config as it is read, e.g) from the body of the http response.
+         * The comments, and the commands that a Configuration does not use, are dropped as soon as
+         * their block is read, so the memory needed is for the commands used, and the largest block.
+         * @param runningConfig BufferedReader, read to the end but not closed
+         * @param network String
+         * @throws IOException
+         */
+        public Configuration(final BufferedReader runningConfig, final String network) throws IOException {
+            this(Events.beginConfiguration(), System.nanoTime(), Commands.read(runningConfig), network);
+        }
+
+        /**
+         * The span and the start are taken before the commands are parsed: the arguments are evaluated
+         * in order.
+         */
+        private Configuration(Object span, long start, Commands parsed, String network) {
+            final List<Object> commands = parsed.commands;
 
             //locate the interface that is within the network.
             intf = getInterfaceCommand(commands, network);
-            if (intf == null) {
-                return;
+            if (intf != null) {
+                String nameIf = intf.getNameIf();
+                vlan = intf.getVLAN();
+                getFirewall(commands, nameIf);
+                getQoS(commands, nameIf);
+                getACLs(commands);
+            }
+            EXTRACT.recordSince(start);
+            if (span != null) {
+                Events.endConfiguration(span, network, parsed.lines, parsed.topLevel, size());
+            }
+        }
+
+        private static Commands readCommands(String runningConfig) {
+            try {
+                return Commands.read(new BufferedReader(new StringReader(runningConfig)));
+            } catch (IOException e) {
+                // not from a StringReader
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * @return int, the number of commands extracted
+         */
+        private int size() {
+            int n = 0;
+            for (Object[] section: new Object[][] {accessGroups, servicePolicies, policyMaps, classMaps, accessLists}) {
+                n += section == null ? 0 : section.length;
             }
-            String nameIf = intf.getNameIf();
-            vlan = intf.getVLAN();
-            getFirewall(commands, nameIf);
-            getQoS(commands, nameIf);
-            getACLs(commands);
+            return n;
         }
 
 
@@ -472,6 +536,82 @@ public class ASA extends Host {
         }
 
 
+        /***
+         * The commands of a running-config, and the number of lines they were parsed from.
+         */
+        private static class Commands {
+            // the commands that Configuration looks at
+            private static final Set<String> USED = new HashSet<>(Arrays.asList(
+                    "interface", "access-group", "service-policy", "policy-map", "class-map", "access-list"));
+
+            final List<Object> commands;
+            final int lines;
+            // the top level commands of the running-config, used or not, without the comments
+            final int topLevel;
+
+            Commands(List<Object> commands, int lines, int topLevel) {
+                this.commands = commands;
+                this.lines = lines;
+                this.topLevel = topLevel;
+            }
+
+            /**
+             * Parse all the lines of the running-config, and keep all the commands.
+             */
+            static Commands parse(String[] lines) {
+                List<Object> commands = CompositeCommand.lines2Commands(lines, 0);
+                int topLevel = (int) commands.stream().filter(cmd -> !mainCommand(cmd).startsWith("!")).count();
+                return new Commands(commands, lines.length, topLevel);
+            }
+
+            /**
+             * Read the running-config a block at a time: a block is a line that is not indented, with
+             * the indented lines that follow it, i.e) a command with its sub-commands. Comments ("!")
+             * are skipped, and a block is kept only for the commands it has that Configuration uses.
+             */
+            static Commands read(BufferedReader reader) throws IOException {
+                final List<Object> commands = new ArrayList<>();
+                final List<String> block = new ArrayList<>();
+                int n = 0;
+                int topLevel = 0;
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    n++;
+                    if (line.startsWith("!")) {
+                        continue;
+                    }
+                    if (!block.isEmpty() && !isIndented(line)) {
+                        topLevel += addBlock(block, commands);
+                        block.clear();
+                    }
+                    block.add(line);
+                }
+                topLevel += addBlock(block, commands);
+                return new Commands(commands, n, topLevel);
+            }
+
+            private static boolean isIndented(String line) {
+                // as in getSubCommands, which trims the indentation
+                return line.length() > 0 && line.charAt(0) <= ' ';
+            }
+
+            /**
+             * @return int, the number of top level commands in the block, used or not
+             */
+            private static int addBlock(List<String> block, List<Object> commands) {
+                if (block.isEmpty()) {
+                    return 0;
+                }
+                List<Object> parsed = CompositeCommand.lines2Commands(block.toArray(new String[block.size()]), 0);
+                for (Object cmd: parsed) {
+                    if (USED.contains(mainCommandWords(cmd)[0])) {
+                        commands.add(cmd);
+                    }
+                }
+                return parsed.size();
+            }
+        }
+
         private static String mainCommand(Object cmd) {
             return cmd instanceof String? (String)cmd : ((CompositeCommand)cmd).command;
         }
@@ -0,0 +1,208 @@
+package com.moonlite.discover;
+
+/**
+ * 
+ * @author Dahai Li
+ *
+ * Addresses converts IP addresses between their text form, as found in Host.address,
+ * and their binary form.
+ */
+public final class Addresses {
+
+	private Addresses () {
+	}
+
+	/**
+	 * @param address String
+	 * @return true if address is an IPv4 address in dotted decimal notation, e.g) 10.28.29.96
+	 */
+	public static boolean isIPv4 (String address) {
+		if (address == null) {
+			return false;
+		}
+		int octets = 0;
+		int value = -1;
+		for (int i = 0; i < address.length(); i++) {
+			char c = address.charAt(i);
+			if (c == '.') {
+				if (value < 0 || ++octets > 3) {
+					return false;
+				}
+				value = -1;
+			} else if (c >= '0' && c <= '9') {
+				value = (value < 0 ? 0 : value * 10) + (c - '0');
+				if (value > 255) {
+					return false;
+				}
+			} else {
+				return false;
+			}
+		}
+		return octets == 3 && value >= 0;
+	}
+
+	/**
+	 * @param address String, IPv4 address in dotted decimal notation
+	 * @return int, the address packed in network byte order, i.e. 10.0.0.1 is 0x0a000001
+	 * @throws IllegalArgumentException if address is not an IPv4 address
+	 */
+	public static int parseIPv4 (String address) {
+		if (!isIPv4(address)) {
+			throw new IllegalArgumentException("Not an IPv4 address: " + address);
+		}
+		int result = 0;
+		int value = 0;
+		for (int i = 0; i < address.length(); i++) {
+			char c = address.charAt(i);
+			if (c == '.') {
+				result = (result << 8) | value;
+				value = 0;
+			} else {
+				value = value * 10 + (c - '0');
+			}
+		}
+		return (result << 8) | value;
+	}
+
+	/**
+	 * @param address int, IPv4 address packed by parseIPv4
+	 * @return String in dotted decimal notation
+	 */
+	public static String formatIPv4 (int address) {
+		return ((address >>> 24) & 0xff) + "." + ((address >>> 16) & 0xff) + "." +
+				((address >>> 8) & 0xff) + "." + (address & 0xff);
+	}
+
+	/**
+	 * @param address String
+	 * @return true if address is an IPv6 address, e.g) fe80::20c:29ff:fe12:3456, without a zone index
+	 */
+	public static boolean isIPv6 (String address) {
+		return parseIPv6(address) != null;
+	}
+
+	/**
+	 * Parse an IPv6 address, including the forms with "::" and with an embedded IPv4 address.
+	 * @param address String
+	 * @return byte[16], or null if address is not an IPv6 address
+	 */
+	public static byte[] parseIPv6 (String address) {
+		if (address == null || address.indexOf(':') < 0) {
+			return null;
+		}
+		String[] halves = address.split("::", -1);
+		if (halves.length > 2 || (halves.length == 2 && halves[0].indexOf('.') >= 0)) {
+			return null;
+		}
+		int[] head = parseGroups(halves[0]);
+		int[] tail = halves.length == 2 ? parseGroups(halves[1]) : new int[0];
+		if (head == null || tail == null) {
+			return null;
+		}
+		int groups = head.length + tail.length;
+		if (halves.length == 1 ? groups != 8 : groups > 7) {
+			return null;
+		}
+		byte[] result = new byte[16];
+		for (int i = 0; i < head.length; i++) {
+			result[2 * i] = (byte) (head[i] >>> 8);
+			result[2 * i + 1] = (byte) head[i];
+		}
+		for (int i = 0; i < tail.length; i++) {
+			int g = 8 - tail.length + i;
+			result[2 * g] = (byte) (tail[i] >>> 8);
+			result[2 * g + 1] = (byte) tail[i];
+		}
+		return result;
+	}
+
+	/**
+	 * @return the 16 bit groups separated by ':', where a trailing IPv4 address counts as two groups,
+	 * or null if the text is not valid.
+	 */
+	private static int[] parseGroups (String text) {
+		if (text.isEmpty()) {
+			return new int[0];
+		}
+		String[] parts = text.split(":", -1);
+		int last = parts.length - 1;
+		boolean ipv4 = Addresses.isIPv4(parts[last]);
+		int[] result = new int[ipv4 ? parts.length + 1 : parts.length];
+		for (int i = 0; i < parts.length; i++) {
+			String part = parts[i];
+			if (i == last && ipv4) {
+				int v4 = parseIPv4(part);
+				result[i] = v4 >>> 16;
+				result[i + 1] = v4 & 0xffff;
+				break;
+			}
+			if (part.isEmpty() || part.length() > 4) {
+				return null;
+			}
+			int value = 0;
+			for (int k = 0; k < part.length(); k++) {
+				int digit = Character.digit(part.charAt(k), 16);
+				if (digit < 0) {
+					return null;
+				}
+				value = (value << 4) | digit;
+			}
+			result[i] = value;
+		}
+		return result;
+	}
+
+	/**
+	 * Format an IPv6 address in the recommended text form of RFC 5952, the form nmap reports:
+	 * lower case, without leading zeros, and with the longest run of zero groups shortened to "::".
+	 * @param address byte[16]
+	 * @return String
+	 */
+	public static String formatIPv6 (byte[] address) {
+		int[] groups = new int[8];
+		for (int i = 0; i < 8; i++) {
+			groups[i] = ((address[2 * i] & 0xff) << 8) | (address[2 * i + 1] & 0xff);
+		}
+		int bestStart = -1;
+		int bestLength = 1;
+		for (int i = 0; i < 8; ) {
+			if (groups[i] != 0) {
+				i++;
+				continue;
+			}
+			int start = i;
+			while (i < 8 && groups[i] == 0) {
+				i++;
+			}
+			if (i - start > bestLength) {
+				bestStart = start;
+				bestLength = i - start;
+			}
+		}
+		StringBuilder result = new StringBuilder(39);
+		for (int i = 0; i < 8; i++) {
+			if (i == bestStart) {
+				result.append("::");
+				i += bestLength - 1;
+				continue;
+			}
+			if (result.length() > 0 && result.charAt(result.length() - 1) != ':') {
+				result.append(':');
+			}
+			result.append(Integer.toHexString(groups[i]));
+		}
+		return result.toString();
+	}
+
+	/**
+	 * @param address String, an IPv4 or IPv6 address
+	 * @return byte[4] or byte[16] in network byte order, or null if address is neither
+	 */
+	public static byte[] toBytes (String address) {
+		if (isIPv4(address)) {
+			int v4 = parseIPv4(address);
+			return new byte[] {(byte) (v4 >>> 24), (byte) (v4 >>> 16), (byte) (v4 >>> 8), (byte) v4};
+		}
+		return parseIPv6(address);
+	}
+}
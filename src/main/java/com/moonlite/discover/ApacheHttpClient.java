@@ -34,6 +34,9 @@ import org.apache.http.util.EntityUtils;
  *
  */
 public class ApacheHttpClient {
+    private static final Metrics.Histogram GET = Metrics.histogram("http.get");
+    private static final Metrics.Counter GET_ERRORS = Metrics.counter("http.get.errors");
+
     private ResponseHandler<String> respHandler = new ResponseHandler<String>() {
         @Override
         public String handleResponse(HttpResponse response) throws ClientProtocolException, IOException {
@@ -99,21 +102,42 @@ public class ApacheHttpClient {
      * @throws IOException
      */
     private String get(String path, CloseableHttpClient httpClient, ResponseHandler<String> respHandler) throws IOException {
+        final Object span = Events.beginFetch();
+        final long start = System.nanoTime();
         try {
-            return  httpClient.execute(new HttpGet(path), respHandler);
+            final String body = httpClient.execute(new HttpGet(path), respHandler);
+            Events.endFetch(span, path, body, null);
+            return body;
+        } catch (IOException e) {
+            GET_ERRORS.increment();
+            Events.endFetch(span, path, null, e);
+            throw e;
         } finally {
             httpClient.close();
+            GET.recordSince(start);
         }
     }
 
     private String get(String path, CloseableHttpClient httpClient) throws IOException {
-        final CloseableHttpResponse response = httpClient.execute(new HttpGet(path));
+        final Object span = Events.beginFetch();
+        final long start = System.nanoTime();
         try {
-            HttpEntity entity = response.getEntity();
-            return EntityUtils.toString(entity);
+            final CloseableHttpResponse response = httpClient.execute(new HttpGet(path));
+            try {
+                HttpEntity entity = response.getEntity();
+                final String body = EntityUtils.toString(entity);
+                Events.endFetch(span, path, body, null);
+                return body;
+            } finally {
+                response.close();
+            }
+        } catch (IOException e) {
+            GET_ERRORS.increment();
+            Events.endFetch(span, path, null, e);
+            throw e;
         } finally {
-            response.close();
             httpClient.close();
+            GET.recordSince(start);
         }
     }
     
@@ -130,18 +154,38 @@ public class ApacheHttpClient {
      * @return SSLConnectionSocketFactory that bypass certificate check and bypass HostnameVerifier
      */
     private SSLConnectionSocketFactory createGenerousSSLSocketFactory() {
-        SSLContext sslContext;
-        try {
-            sslContext = SSLContext.getInstance("SSL");
-            sslContext.init(null, new TrustManager[]{createGenerousTrustManager()}, new SecureRandom());
-        } catch (KeyManagementException | NoSuchAlgorithmException e) {
-            e.printStackTrace();
+        final SSLContext sslContext = generousSSLContext();
+        if (sslContext == null) {
             return null;
         }
         return new SSLConnectionSocketFactory(sslContext, NoopHostnameVerifier.INSTANCE);
     }
 
-    private X509TrustManager createGenerousTrustManager() {
+    /***
+     * The SSLContext that bypasses certificate checking is created once: creating it seeds a SecureRandom,
+     * and its session cache lets later connections to the same device resume the TLS session.
+     * @return SSLContext, or null if TLS is not available
+     */
+    static SSLContext generousSSLContext() {
+        return GenerousSSLContext.INSTANCE;
+    }
+
+    private static class GenerousSSLContext {
+        static final SSLContext INSTANCE = create();
+
+        private static SSLContext create() {
+            try {
+                final SSLContext sslContext = SSLContext.getInstance("TLS");
+                sslContext.init(null, new TrustManager[]{createGenerousTrustManager()}, new SecureRandom());
+                return sslContext;
+            } catch (KeyManagementException | NoSuchAlgorithmException e) {
+                e.printStackTrace();
+                return null;
+            }
+        }
+    }
+
+    private static X509TrustManager createGenerousTrustManager() {
         return new X509TrustManager() {
             @Override
             public void checkClientTrusted(X509Certificate[] cert, String s) throws CertificateException {
@@ -0,0 +1,25 @@
+package com.moonlite.discover;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ * @author Dahai Li
+ *
+ * AsyncDiscover discovers network hosts without blocking the caller.
+ * The future fails with the cause instead of giving null:
+ *   - java.util.concurrent.TimeoutException if the scan takes longer than the timeout,
+ *   - java.io.IOException if the scan cannot be run or fails,
+ *   - the exception of parsing the result.
+ * Cancelling the future, or the timeout, stops the scan, e.g) kills the nmap process.
+ */
+public interface AsyncDiscover {
+	/**
+	 * @param target ScanTarget
+	 * @param timeout long, 0 for no timeout
+	 * @param unit TimeUnit of the timeout
+	 * @return CompletableFuture<Host[]>
+	 */
+	CompletableFuture<Host[]> discoverAsync (ScanTarget target, long timeout, TimeUnit unit);
+}
@@ -0,0 +1,211 @@
+package com.moonlite.discover;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ *
+ * @author Dahai Li
+ *
+ * AsyncScan runs nmap for AsyncDiscover without a thread per scan.
+ * One daemon thread, the reaper, polls all the running nmap processes: it drains their output so
+ * that they do not block on a full pipe, kills those past their deadline, and hands the xml file of
+ * each finished process to the common fork-join pool to be parsed.
+ * The process is killed as soon as its future is cancelled.
+ */
+final class AsyncScan {
+	/***
+	 * Reads the xml output of nmap, e.g) NMap::readXMLFile
+	 */
+	interface Reader {
+		Host[] read (String fileName) throws Exception;
+	}
+
+	static final long POLL_MILLIS = 50;
+	private static final int MAX_STDERR = 4096;
+	private static final Metrics.Histogram EXEC = Metrics.histogram("nmap.exec");
+	private static final Metrics.Counter EXEC_FAILURES = Metrics.counter("nmap.exec.failures");
+
+	private static final Set<Scan> running = ConcurrentHashMap.newKeySet();
+	private static ScheduledExecutorService reaper = null;
+
+	private AsyncScan () {
+	}
+
+	/**
+	 * Run "nmap -F -O -oX <temp file> <target>..."
+	 * @param target ScanTarget
+	 * @param timeout long, 0 for no timeout
+	 * @param unit TimeUnit
+	 * @param reader Reader of the xml file
+	 * @return CompletableFuture<Host[]>
+	 */
+	static CompletableFuture<Host[]> start (ScanTarget target, long timeout, TimeUnit unit, Reader reader) {
+		String fileName;
+		try {
+			File f = File.createTempFile("nmap", null);
+			f.deleteOnExit();
+			fileName = f.getAbsolutePath();
+		} catch (IOException e) {
+			CompletableFuture<Host[]> failed = new CompletableFuture<>();
+			failed.completeExceptionally(e);
+			return failed;
+		}
+		return start(NMapCommand.build(fileName, target.toString()), fileName, timeout, unit, reader);
+	}
+
+	/**
+	 * @param command String[], the command that writes the xml output to fileName
+	 * @param fileName String, deleted once it is read
+	 * @param timeout long, 0 for no timeout
+	 * @param unit TimeUnit
+	 * @param reader Reader of the xml file
+	 * @return CompletableFuture<Host[]>
+	 */
+	static CompletableFuture<Host[]> start (String[] command, String fileName, long timeout, TimeUnit unit,
+			Reader reader) {
+		CompletableFuture<Host[]> future = new CompletableFuture<>();
+		Process process;
+		try {
+			process = new Shell().start(command);
+		} catch (IOException e) {
+			new File(fileName).delete();
+			future.completeExceptionally(e);
+			return future;
+		}
+		long deadline = timeout > 0 ? System.nanoTime() + unit.toNanos(timeout) : 0;
+		Scan scan = new Scan(process, fileName, deadline, reader, future);
+		// kill the process as soon as the future is cancelled or fails, rather than at the next poll
+		future.whenComplete((hosts, e) -> {
+			if (process.isAlive()) {
+				ProcessRunner.kill(process);
+			}
+		});
+		running.add(scan);
+		startReaper();
+		return future;
+	}
+
+	/**
+	 * @return int, the number of processes being polled
+	 */
+	static int getRunning () {
+		return running.size();
+	}
+
+	private static synchronized void startReaper () {
+		if (reaper != null) {
+			return;
+		}
+		reaper = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "nmap-reaper");
+			t.setDaemon(true);
+			return t;
+		});
+		reaper.scheduleWithFixedDelay(AsyncScan::poll, POLL_MILLIS, POLL_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	private static void poll () {
+		long now = System.nanoTime();
+		for (Scan scan: running) {
+			try {
+				scan.poll(now);
+			} catch (Exception e) {
+				// an exception would stop the reaper for all the other scans
+				scan.fail(e);
+			}
+		}
+	}
+
+	/***
+	 * A running nmap process and its future.
+	 */
+	private static class Scan {
+		final Process process;
+		final String fileName;
+		final long started = System.nanoTime();
+		final long deadline;
+		final Reader reader;
+		final CompletableFuture<Host[]> future;
+		final ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+		final byte[] buf = new byte[4096];
+
+		Scan (Process process, String fileName, long deadline, Reader reader, CompletableFuture<Host[]> future) {
+			this.process = process;
+			this.fileName = fileName;
+			this.deadline = deadline;
+			this.reader = reader;
+			this.future = future;
+		}
+
+		void poll (long now) throws IOException {
+			if (future.isDone()) {
+				// cancelled
+				fail(null);
+				return;
+			}
+			drain(process.getInputStream(), null);
+			drain(process.getErrorStream(), stderr);
+			if (!process.isAlive()) {
+				// within POLL_MILLIS of the exit
+				EXEC.recordSince(started);
+				running.remove(this);
+				drain(process.getInputStream(), null);
+				drain(process.getErrorStream(), stderr);
+				ForkJoinPool.commonPool().execute(this::read);
+			} else if (deadline != 0 && now - deadline >= 0) {
+				fail(new TimeoutException("nmap did not finish in time"));
+			}
+		}
+
+		void read () {
+			try {
+				int exit = process.exitValue();
+				if (exit != 0) {
+					EXEC_FAILURES.increment();
+					future.completeExceptionally(new IOException("nmap exited with " + exit + ": "
+							+ new String(stderr.toByteArray(), StandardCharsets.UTF_8).trim()));
+				} else {
+					future.complete(reader.read(fileName));
+				}
+			} catch (Exception e) {
+				future.completeExceptionally(e);
+			} finally {
+				new File(fileName).delete();
+			}
+		}
+
+		void fail (Exception e) {
+			running.remove(this);
+			ProcessRunner.kill(process);
+			if (e != null) {
+				EXEC_FAILURES.increment();
+				future.completeExceptionally(e);
+			}
+			new File(fileName).delete();
+		}
+
+		/**
+		 * Read what is available without blocking.
+		 */
+		private void drain (InputStream in, ByteArrayOutputStream keep) throws IOException {
+			int n;
+			while (in.available() > 0 && (n = in.read(buf, 0, Math.min(buf.length, in.available()))) > 0) {
+				if (keep != null && keep.size() < MAX_STDERR) {
+					keep.write(buf, 0, Math.min(n, MAX_STDERR - keep.size()));
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,181 @@
+package com.moonlite.discover;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ *
+ * @author Dahai Li
+ *
+ * BulkReader reads a directory of nmap xml files in parallel on a fork-join pool.
+ * The hosts of all the files are passed to one consumer as they are parsed, with duplicates removed:
+ * a host whose address has been seen in another file is skipped.
+ * The consumer is called by one thread at a time, so it does not need to be thread-safe.
+ * A file that cannot be read is reported in the Report, and the other files are still read; the hosts
+ * parsed from it before the error have been passed to the consumer.
+ *
+ * The files are parsed with NMapStAX, the streaming reader, so that the memory used does not depend
+ * on the size of the files. It keeps no state between files, so the workers share one; each file has
+ * its own stream reader, from the XMLInputFactory shared through XMLParsers.
+ */
+public class BulkReader {
+	private final ForkJoinPool pool;
+	private final NMapStAX reader = new NMapStAX();
+
+	/**
+	 * Read on the common fork-join pool.
+	 */
+	public BulkReader () {
+		this(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param pool ForkJoinPool, the workers
+	 */
+	public BulkReader (ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/***
+	 *
+	 * Report is the outcome of reading a batch of files.
+	 *
+	 */
+	public static class Report {
+		public final List<Path> files;
+		public final int hosts;
+		public final int duplicates;
+		public final Map<Path, Exception> errors;
+
+		Report (List<Path> files, int hosts, int duplicates, Map<Path, Exception> errors) {
+			this.files = Collections.unmodifiableList(files);
+			this.hosts = hosts;
+			this.duplicates = duplicates;
+			this.errors = Collections.unmodifiableMap(errors);
+		}
+	}
+
+	/**
+	 * @param files String, a directory, whose *.xml files are read, or a glob for the file names in a
+	 *        directory, e.g) /var/spool/nmap/scan-*.xml
+	 * @param consumer Consumer<Host>
+	 * @return Report
+	 * @throws IOException if the directory cannot be listed
+	 */
+	public Report read (String files, Consumer<Host> consumer) throws IOException {
+		return read(list(files), consumer);
+	}
+
+	/**
+	 * @param files List<Path> of nmap xml files
+	 * @param consumer Consumer<Host>
+	 * @return Report
+	 */
+	public Report read (List<Path> files, Consumer<Host> consumer) {
+		Set<String> seen = ConcurrentHashMap.newKeySet();
+		AtomicInteger hosts = new AtomicInteger();
+		AtomicInteger duplicates = new AtomicInteger();
+		Map<Path, Exception> errors = new ConcurrentHashMap<>();
+		Consumer<Host> merge = host -> {
+			if (host.address != null && !seen.add(host.address)) {
+				duplicates.incrementAndGet();
+				return;
+			}
+			hosts.incrementAndGet();
+			synchronized (consumer) {
+				consumer.accept(host);
+			}
+		};
+		pool.invoke(new ReadFiles(files, 0, files.size(), merge, errors));
+
+		// report the errors in the order of the files
+		Map<Path, Exception> ordered = new LinkedHashMap<>();
+		for (Path file: files) {
+			if (errors.containsKey(file)) {
+				ordered.put(file, errors.get(file));
+			}
+		}
+		return new Report(files, hosts.get(), duplicates.get(), ordered);
+	}
+
+	/**
+	 * @param files String, a directory or a glob, see read
+	 * @return List<Path> of the files, sorted by name
+	 * @throws IOException
+	 */
+	static List<Path> list (String files) throws IOException {
+		Path path = Paths.get(files);
+		Path dir;
+		String glob;
+		if (Files.isDirectory(path)) {
+			dir = path;
+			glob = "*.xml";
+		} else {
+			dir = path.getParent() == null ? Paths.get(".") : path.getParent();
+			glob = path.getFileName().toString();
+		}
+		List<Path> result = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, glob)) {
+			for (Path file: stream) {
+				if (Files.isRegularFile(file)) {
+					result.add(file);
+				}
+			}
+		}
+		Collections.sort(result);
+		return result;
+	}
+
+	/***
+	 * Split the files in halves until one is left, and read it.
+	 */
+	private class ReadFiles extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final List<Path> files;
+		private final int from;
+		private final int to;
+		private final Consumer<Host> consumer;
+		private final Map<Path, Exception> errors;
+
+		ReadFiles (List<Path> files, int from, int to, Consumer<Host> consumer, Map<Path, Exception> errors) {
+			this.files = files;
+			this.from = from;
+			this.to = to;
+			this.consumer = consumer;
+			this.errors = errors;
+		}
+
+		@Override
+		protected void compute () {
+			if (to - from > 1) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new ReadFiles(files, from, mid, consumer, errors),
+						new ReadFiles(files, mid, to, consumer, errors));
+				return;
+			}
+			if (to == from) {
+				return;
+			}
+			Path file = files.get(from);
+			try {
+				reader.readXMLFile(file.toString(), consumer);
+			} catch (Exception e) {
+				errors.put(file, e);
+			}
+		}
+	}
+}
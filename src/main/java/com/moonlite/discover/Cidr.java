@@ -0,0 +1,143 @@
+package com.moonlite.discover;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 
+ * @author Dahai Li
+ *
+ * Cidr is an IPv4 network in CIDR notation, e.g) 10.28.0.0/16.
+ * @see org.apache.commons.net.util.SubnetUtils, which checks addresses against a network,
+ * but cannot split it.
+ */
+public class Cidr {
+	final int network;
+	final int prefix;
+
+	public Cidr (int address, int prefix) {
+		if (prefix < 0 || prefix > 32) {
+			throw new IllegalArgumentException("Invalid prefix length: " + prefix);
+		}
+		this.prefix = prefix;
+		this.network = address & mask(prefix);
+	}
+
+	/**
+	 * @param target String, a network such as 10.28.0.0/16, or a single address such as 10.28.1.1
+	 * @return Cidr, or null if target is not an IPv4 network, e.g) www.microsoft.com/24
+	 */
+	public static Cidr parse (String target) {
+		String address = target.trim();
+		int prefix = 32;
+		int slash = address.indexOf('/');
+		if (slash >= 0) {
+			try {
+				prefix = Integer.parseInt(address.substring(slash + 1));
+			} catch (NumberFormatException e) {
+				return null;
+			}
+			address = address.substring(0, slash);
+		}
+		if (!Addresses.isIPv4(address) || prefix < 0 || prefix > 32) {
+			return null;
+		}
+		return new Cidr(Addresses.parseIPv4(address), prefix);
+	}
+
+	/**
+	 * @return long, the number of addresses in the network
+	 */
+	public long size () {
+		return 1L << (32 - prefix);
+	}
+
+	/**
+	 * @param address int
+	 * @return true if the address is in the network
+	 */
+	public boolean contains (int address) {
+		return (address & mask(prefix)) == network;
+	}
+
+	/**
+	 * @param index long, 0 to size() - 1
+	 * @return int, the index-th address of the network
+	 */
+	public int address (long index) {
+		return (int) (network + index);
+	}
+
+	/**
+	 * Split the network into sub networks
+	 * @param subPrefix int, the prefix length of the sub networks, e.g) 24 to split a /16 into 256 /24's.
+	 * @return List<Cidr> of the sub networks in address order, or this network only, if it is not
+	 * larger than subPrefix.
+	 */
+	public List<Cidr> split (int subPrefix) {
+		List<Cidr> result = new ArrayList<>();
+		if (subPrefix <= prefix) {
+			result.add(this);
+			return result;
+		}
+		if (subPrefix > 32) {
+			throw new IllegalArgumentException("Invalid prefix length: " + subPrefix);
+		}
+		long count = 1L << (subPrefix - prefix);
+		long step = 1L << (32 - subPrefix);
+		for (long i = 0; i < count; i++) {
+			result.add(new Cidr((int) (network + i * step), subPrefix));
+		}
+		return result;
+	}
+
+	/**
+	 * Cover a range of addresses with networks
+	 * @param first int, the first address of the range
+	 * @param last int, the last address of the range, inclusive
+	 * @return List<Cidr>, the fewest networks that cover exactly the range, in address order,
+	 * e.g) 10.0.0.5 - 10.0.0.20 gives 10.0.0.5/32, 10.0.0.6/31, 10.0.0.8/29, 10.0.0.16/30, 10.0.0.20/32.
+	 */
+	public static List<Cidr> range (int first, int last) {
+		long start = first & 0xffffffffL;
+		long end = last & 0xffffffffL;
+		if (start > end) {
+			throw new IllegalArgumentException("Invalid range: " + Addresses.formatIPv4(first) + " - "
+					+ Addresses.formatIPv4(last));
+		}
+		List<Cidr> result = new ArrayList<>();
+		while (start <= end) {
+			// the largest network that starts at start and does not go past end
+			int bits = Math.min(Long.numberOfTrailingZeros(start), 32);
+			while ((1L << bits) > end - start + 1) {
+				bits--;
+			}
+			result.add(new Cidr((int) start, 32 - bits));
+			start += 1L << bits;
+		}
+		return result;
+	}
+
+	static int mask (int prefix) {
+		return prefix == 0 ? 0 : -1 << (32 - prefix);
+	}
+
+	@Override
+	public boolean equals (Object obj) {
+		if (!(obj instanceof Cidr)) {
+			return false;
+		}
+		Cidr other = (Cidr) obj;
+		return network == other.network && prefix == other.prefix;
+	}
+
+	@Override
+	public int hashCode () {
+		return network * 31 + prefix;
+	}
+
+	@Override
+	public String toString () {
+		return Addresses.formatIPv4(network) + "/" + prefix;
+	}
+}
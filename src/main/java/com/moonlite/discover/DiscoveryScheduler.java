@@ -0,0 +1,266 @@
+package com.moonlite.discover;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ * @author Dahai Li
+ *
+ * DiscoveryScheduler scans a registry of targets again and again, each at its own interval, in place
+ * of cron jobs running NMap.discover.
+ *   - At most maxConcurrent scans, i.e) nmap processes, run at the same time. The targets that are
+ *     due wait in a queue, the ones of higher priority first, then the ones due for the longest.
+ *   - A target whose result has not changed since its last scan (an empty ScanDiff) is scanned less
+ *     often: its interval doubles, up to MAX_BACKOFF times the registered interval. It goes back to the
+ *     registered interval as soon as its result changes.
+ *   - getQueueDepth and getLagMillis tell whether the cap keeps up with the registry.
+ * Scans run through AsyncDiscover, so the scheduler needs one thread only, the timer.
+ */
+public class DiscoveryScheduler {
+	/***
+	 * The interval of an unchanged target grows up to this many times its registered interval.
+	 */
+	public static final int MAX_BACKOFF = 8;
+
+	/***
+	 *
+	 * Listener is told the result of each scan. It is called on the thread that completes the scan.
+	 *
+	 */
+	public interface Listener {
+		/**
+		 * @param name String, the name of the target
+		 * @param hosts Host[]
+		 * @param diff ScanDiff with the previous result, or null for the first scan
+		 */
+		void discovered (String name, Host[] hosts, ScanDiff diff);
+
+		default void failed (String name, Throwable cause) {
+			cause.printStackTrace();
+		}
+	}
+
+	private final AsyncDiscover discover;
+	private final int maxConcurrent;
+	private final long scanTimeoutMillis;
+	private final Listener listener;
+	// guarded by this
+	private final Map<String, Entry> entries = new LinkedHashMap<>();
+	private int running = 0;
+	private long started = 0;
+	private ScheduledExecutorService timer = null;
+
+	/***
+	 * A registered target.
+	 */
+	private static class Entry {
+		final String name;
+		final ScanTarget target;
+		final long intervalMillis;
+		final int priority;
+		long currentIntervalMillis;
+		long nextRun;
+		boolean running = false;
+		Host[] last = null;
+
+		Entry (String name, ScanTarget target, long intervalMillis, int priority, long nextRun) {
+			this.name = name;
+			this.target = target;
+			this.intervalMillis = intervalMillis;
+			this.priority = priority;
+			this.currentIntervalMillis = intervalMillis;
+			this.nextRun = nextRun;
+		}
+	}
+
+	private static final Comparator<Entry> BY_PRIORITY = (a, b) -> a.priority != b.priority
+			? Integer.compare(b.priority, a.priority) : Long.compare(a.nextRun, b.nextRun);
+
+	/**
+	 * @param discover AsyncDiscover, e.g) NMap
+	 * @param maxConcurrent int, the maximum number of scans running at the same time
+	 * @param scanTimeoutMillis long, the timeout of each scan, 0 for none
+	 * @param listener Listener
+	 */
+	public DiscoveryScheduler (AsyncDiscover discover, int maxConcurrent, long scanTimeoutMillis, Listener listener) {
+		if (maxConcurrent < 1) {
+			throw new IllegalArgumentException("Invalid maxConcurrent: " + maxConcurrent);
+		}
+		this.discover = discover;
+		this.maxConcurrent = maxConcurrent;
+		this.scanTimeoutMillis = scanTimeoutMillis;
+		this.listener = listener;
+	}
+
+	/**
+	 * Add a target, or replace the one of the same name. It is due at once.
+	 * @param name String, the name of the target, e.g) "lab"
+	 * @param target ScanTarget
+	 * @param intervalMillis long, how often to scan the target
+	 * @param priority int, a target of higher priority is started first when several are due
+	 */
+	public synchronized void register (String name, ScanTarget target, long intervalMillis, int priority) {
+		if (intervalMillis <= 0) {
+			throw new IllegalArgumentException("Invalid interval: " + intervalMillis);
+		}
+		entries.put(name, new Entry(name, target, intervalMillis, priority, System.currentTimeMillis()));
+	}
+
+	/**
+	 * Remove a target. A scan of it that is running is not stopped, but its result is dropped.
+	 * @param name String
+	 * @return true if the target was registered
+	 */
+	public synchronized boolean unregister (String name) {
+		return entries.remove(name) != null;
+	}
+
+	/**
+	 * Start the timer, which checks for the targets that are due.
+	 * @param tickMillis long, how often to check, e.g) 1000
+	 */
+	public synchronized void start (long tickMillis) {
+		if (timer != null) {
+			return;
+		}
+		timer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "discovery-scheduler");
+			t.setDaemon(true);
+			return t;
+		});
+		timer.scheduleWithFixedDelay(() -> dispatch(System.currentTimeMillis()), 0, tickMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stop the timer. The running scans complete, but no more are started.
+	 */
+	public synchronized void stop () {
+		if (timer != null) {
+			timer.shutdownNow();
+			timer = null;
+		}
+	}
+
+	/**
+	 * Start the targets that are due, as long as there is room under the cap.
+	 * @param now long, the current time in milliseconds
+	 */
+	synchronized void dispatch (long now) {
+		for (Entry entry: due(now)) {
+			if (running >= maxConcurrent) {
+				break;
+			}
+			entry.running = true;
+			running++;
+			started++;
+			CompletableFuture<Host[]> future;
+			try {
+				future = discover.discoverAsync(entry.target, scanTimeoutMillis, TimeUnit.MILLISECONDS);
+			} catch (RuntimeException e) {
+				future = new CompletableFuture<>();
+				future.completeExceptionally(e);
+			}
+			future.whenComplete((hosts, e) -> finished(entry, hosts, e));
+		}
+	}
+
+	private void finished (Entry entry, Host[] hosts, Throwable error) {
+		ScanDiff diff = null;
+		boolean registered;
+		ScheduledExecutorService t;
+		synchronized (this) {
+			running--;
+			entry.running = false;
+			long now = System.currentTimeMillis();
+			if (error == null && entry.last != null) {
+				diff = ScanDiff.compare(entry.last, hosts);
+				entry.currentIntervalMillis = diff.isEmpty()
+						? Math.min(entry.currentIntervalMillis * 2, entry.intervalMillis * MAX_BACKOFF)
+						: entry.intervalMillis;
+			}
+			if (error == null) {
+				entry.last = hosts;
+			}
+			entry.nextRun = now + entry.currentIntervalMillis;
+			registered = entries.get(entry.name) == entry;
+			t = timer;
+		}
+		if (registered) {
+			if (error == null) {
+				listener.discovered(entry.name, hosts, diff);
+			} else {
+				listener.failed(entry.name, error);
+			}
+		}
+		// a slot is free: start a waiting target rather than at the next tick
+		if (t != null) {
+			try {
+				t.execute(() -> dispatch(System.currentTimeMillis()));
+			} catch (RejectedExecutionException e) {
+				// stopped
+			}
+		}
+	}
+
+	private List<Entry> due (long now) {
+		List<Entry> result = new ArrayList<>();
+		for (Entry entry: entries.values()) {
+			if (!entry.running && entry.nextRun <= now) {
+				result.add(entry);
+			}
+		}
+		result.sort(BY_PRIORITY);
+		return result;
+	}
+
+	/**
+	 * @return int, the number of targets that are due but waiting for a free slot
+	 */
+	public synchronized int getQueueDepth () {
+		return due(System.currentTimeMillis()).size();
+	}
+
+	/**
+	 * @return long, how late the target waiting the longest is, in milliseconds, 0 if none is waiting
+	 */
+	public synchronized long getLagMillis () {
+		long now = System.currentTimeMillis();
+		long lag = 0;
+		for (Entry entry: due(now)) {
+			lag = Math.max(lag, now - entry.nextRun);
+		}
+		return lag;
+	}
+
+	/**
+	 * @return int, the number of scans running
+	 */
+	public synchronized int getRunning () {
+		return running;
+	}
+
+	/**
+	 * @return long, the number of scans started
+	 */
+	public synchronized long getStarted () {
+		return started;
+	}
+
+	/**
+	 * @param name String
+	 * @return long, the current interval of the target, or -1 if it is not registered
+	 */
+	public synchronized long getIntervalMillis (String name) {
+		Entry entry = entries.get(name);
+		return entry == null ? -1 : entry.currentIntervalMillis;
+	}
+}
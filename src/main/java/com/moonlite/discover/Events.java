@@ -0,0 +1,139 @@
+package com.moonlite.discover;
+
+/**
+ *
+ * @author Dahai Li
+ *
+ * Events emits Java Flight Recorder events for the spans of a discovery run: running a command, parsing
+ * an nmap xml file, an https request, and building an ASA.Configuration. In a recording they line up
+ * with the GC and allocation events of the same time, e.g)
+ *     java -XX:StartFlightRecording=filename=discover.jfr ...
+ *     jfr print --categories Discover discover.jfr
+ * Each span is
+ *     Object span = Events.beginParse();
+ *     ...
+ *     Events.endParse(span, ...);
+ * begin gives null when the event is not being recorded, and end does nothing with null: with no
+ * recording, a span costs a check of a flag, and nothing is allocated.
+ *
+ * The event classes extend jdk.jfr.Event, which is not in the Java 8 API. They are in JfrEvents, in
+ * the jfr source set, which is compiled for Java 11, so that the rest still compiles for Java 8.
+ * Events loads JfrEvents by name: on Java 8, or without the jfr classes, no event is ever recorded.
+ *
+ * @see JfrEvents
+ */
+final class Events {
+	private static final Sink SINK = loadSink();
+
+	/***
+	 * What JfrEvents implements; see the methods of Events of the same names.
+	 */
+	interface Sink {
+		Object beginProcess ();
+
+		void endProcess (Object span, String[] command, int exitCode, long stdoutBytes);
+
+		Object beginParse ();
+
+		void endParse (Object span, String parser, String fileName, int hosts);
+
+		Object beginFetch ();
+
+		void endFetch (Object span, String url, String body, Throwable error);
+
+		Object beginConfiguration ();
+
+		void endConfiguration (Object span, String network, int lines, int commands, int extracted);
+	}
+
+	private Events () {
+	}
+
+	/**
+	 * @return Sink, JfrEvents, or null if it is not there, or jdk.jfr is not
+	 */
+	private static Sink loadSink () {
+		try {
+			return (Sink) Class.forName("com.moonlite.discover.JfrEvents").getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return Object, the span of running a command, or null
+	 */
+	static Object beginProcess () {
+		return SINK != null ? SINK.beginProcess() : null;
+	}
+
+	/**
+	 * @param span Object, from beginProcess
+	 * @param command String[]
+	 * @param exitCode int, -1 if it timed out
+	 * @param stdoutBytes long, the bytes of stdout, -1 if not read
+	 */
+	static void endProcess (Object span, String[] command, int exitCode, long stdoutBytes) {
+		if (span != null) {
+			SINK.endProcess(span, command, exitCode, stdoutBytes);
+		}
+	}
+
+	/**
+	 * @return Object, the span of parsing an xml file, or null
+	 */
+	static Object beginParse () {
+		return SINK != null ? SINK.beginParse() : null;
+	}
+
+	/**
+	 * @param span Object, from beginParse
+	 * @param parser String, e.g) "dom"
+	 * @param fileName String, whose size is looked up only if the event is committed
+	 * @param hosts int, the number of hosts read
+	 */
+	static void endParse (Object span, String parser, String fileName, int hosts) {
+		if (span != null) {
+			SINK.endParse(span, parser, fileName, hosts);
+		}
+	}
+
+	/**
+	 * @return Object, the span of an https request, or null
+	 */
+	static Object beginFetch () {
+		return SINK != null ? SINK.beginFetch() : null;
+	}
+
+	/**
+	 * @param span Object, from beginFetch
+	 * @param url String
+	 * @param body String, the body of the response, or null
+	 * @param error Throwable, or null
+	 */
+	static void endFetch (Object span, String url, String body, Throwable error) {
+		if (span != null) {
+			SINK.endFetch(span, url, body, error);
+		}
+	}
+
+	/**
+	 * @return Object, the span of building an ASA.Configuration, or null
+	 */
+	static Object beginConfiguration () {
+		return SINK != null ? SINK.beginConfiguration() : null;
+	}
+
+	/**
+	 * @param span Object, from beginConfiguration
+	 * @param network String
+	 * @param lines int, the lines of the running-config
+	 * @param commands int, the top level commands of the running-config, used or not, without the comments
+	 * @param extracted int, the commands kept in the Configuration
+	 */
+	static void endConfiguration (Object span, String network, int lines, int commands, int extracted) {
+		if (span != null) {
+			SINK.endConfiguration(span, network, lines, commands, extracted);
+		}
+	}
+}
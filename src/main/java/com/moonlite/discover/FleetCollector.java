@@ -0,0 +1,302 @@
+package com.moonlite.discover;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ *
+ * @author Dahai Li
+ *
+ * FleetCollector gets the configuration of a network from many ASA's at the same time, where
+ * ASA.getConfiguration does one device, and waits for it.
+ *   - At most maxConcurrent devices are fetched at the same time, each on a thread of the fetch pool,
+ *     and at most maxPerHost from the same address, e.g) for several networks of one device.
+ *     The devices of an address wait in a queue of their own, rather than on a thread, so a busy
+ *     device does not hold back the others.
+ *   - A running-config, once fetched, is parsed on the parse pool, so a fetch thread goes on to the next
+ *     device as soon as its response is read.
+ * The connections are those of a PooledHttpClient. It needs at least maxPerHost connections per route,
+ * and maxConcurrent in all, or the fetches wait for a connection.
+ * Each device has a Result: its Configuration or the error, and how long the fetch and the parse took.
+ */
+public class FleetCollector {
+	private final PooledHttpClient client;
+	private final int maxPerHost;
+	private final ExecutorService fetchPool;
+	private final ExecutorService parsePool;
+
+	/***
+	 *
+	 * Result of collecting one device.
+	 *
+	 */
+	public static class Result {
+		private final ASA device;
+		private final ASA.Configuration configuration;
+		private final Throwable error;
+		private final long fetchMillis;
+		private final long parseMillis;
+
+		Result (ASA device, ASA.Configuration configuration, Throwable error, long fetchMillis, long parseMillis) {
+			this.device = device;
+			this.configuration = configuration;
+			this.error = error;
+			this.fetchMillis = fetchMillis;
+			this.parseMillis = parseMillis;
+		}
+
+		public ASA getDevice () {
+			return device;
+		}
+
+		/**
+		 * @return ASA.Configuration, or null if the device failed
+		 */
+		public ASA.Configuration getConfiguration () {
+			return configuration;
+		}
+
+		/**
+		 * @return Throwable, why the device failed, or null
+		 */
+		public Throwable getError () {
+			return error;
+		}
+
+		public boolean isSuccess () {
+			return error == null;
+		}
+
+		/**
+		 * @return long, the milliseconds from the request to the end of the response, or to the failure
+		 */
+		public long getFetchMillis () {
+			return fetchMillis;
+		}
+
+		/**
+		 * @return long, the milliseconds to parse, 0 if the fetch failed
+		 */
+		public long getParseMillis () {
+			return parseMillis;
+		}
+
+		@Override
+		public String toString () {
+			return device.address + (isSuccess() ? " ok" : " failed: " + error) + ", fetch " + fetchMillis
+					+ "ms, parse " + parseMillis + "ms";
+		}
+	}
+
+	/**
+	 * PooledHttpClient.shared(), 64 devices at the same time, 1 per address, and a parse thread per CPU.
+	 * shared() has 200 connections, and 2 per route.
+	 */
+	public FleetCollector () {
+		this(PooledHttpClient.shared(), 64, 1, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param client PooledHttpClient
+	 * @param maxConcurrent int, the maximum number of fetches at the same time
+	 * @param maxPerHost int, the maximum number of fetches from an address at the same time
+	 * @param parseThreads int, the threads that parse the running-configs
+	 */
+	public FleetCollector (PooledHttpClient client, int maxConcurrent, int maxPerHost, int parseThreads) {
+		if (maxConcurrent < 1 || maxPerHost < 1 || parseThreads < 1) {
+			throw new IllegalArgumentException("Invalid concurrency: " + maxConcurrent + ", " + maxPerHost
+					+ ", " + parseThreads);
+		}
+		this.client = client;
+		this.maxPerHost = maxPerHost;
+		this.fetchPool = Executors.newFixedThreadPool(maxConcurrent, r -> {
+			Thread t = new Thread(r, "fleet-fetch");
+			t.setDaemon(true);
+			return t;
+		});
+		this.parsePool = Executors.newFixedThreadPool(parseThreads, r -> {
+			Thread t = new Thread(r, "fleet-parse");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	/**
+	 * Collect the configuration of the network from all the devices, and wait for them.
+	 * @param devices List<ASA>
+	 * @param network String, in CIDR notation, e.g) 1.1.1.0/24
+	 * @return List<Result>, in the order of devices
+	 * @throws InterruptedException
+	 */
+	public List<Result> collect (List<ASA> devices, String network) throws InterruptedException {
+		List<CompletableFuture<Result>> futures = collectAsync(devices, network);
+		List<Result> results = new ArrayList<>(futures.size());
+		for (CompletableFuture<Result> future: futures) {
+			try {
+				results.add(future.get());
+			} catch (ExecutionException e) {
+				// a Result is made for every failure
+				throw new IllegalStateException(e.getCause());
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Start collecting the configuration of the network from all the devices.
+	 * @param devices List<ASA>
+	 * @param network String, in CIDR notation, e.g) 1.1.1.0/24
+	 * @return List<CompletableFuture<Result>>, in the order of devices. A future completes with a Result
+	 *         whether the device fails or not, even with an Error.
+	 */
+	public List<CompletableFuture<Result>> collectAsync (List<ASA> devices, String network) {
+		List<CompletableFuture<Result>> futures = new ArrayList<>(devices.size());
+		Map<String, Queue<Job>> hosts = new LinkedHashMap<>();
+		for (ASA device: devices) {
+			Job job = new Job(device, network);
+			futures.add(job.future);
+			hosts.computeIfAbsent(device.address, a -> new ArrayDeque<>()).add(job);
+		}
+		for (Queue<Job> queue: hosts.values()) {
+			// each lane fetches the devices of the address one after another
+			int lanes = Math.min(maxPerHost, queue.size());
+			for (int i = 0; i < lanes; i++) {
+				submitLane(queue);
+			}
+		}
+		return futures;
+	}
+
+	/**
+	 * Fetch the next device of the address, then give the thread back to the pool, and queue the lane
+	 * again if the address has more devices.
+	 */
+	private void runLane (Queue<Job> queue) {
+		Job job;
+		synchronized (queue) {
+			job = queue.poll();
+		}
+		if (job == null) {
+			return;
+		}
+		try {
+			job.fetch();
+		} finally {
+			boolean more;
+			synchronized (queue) {
+				more = !queue.isEmpty();
+			}
+			if (more) {
+				submitLane(queue);
+			}
+		}
+	}
+
+	private void submitLane (Queue<Job> queue) {
+		try {
+			fetchPool.execute(() -> runLane(queue));
+		} catch (RejectedExecutionException e) {
+			// shut down: fail the devices not started, rather than leave their futures pending
+			Job job;
+			while (true) {
+				synchronized (queue) {
+					job = queue.poll();
+				}
+				if (job == null) {
+					break;
+				}
+				job.future.complete(new Result(job.device, null, e, 0, 0));
+			}
+		}
+	}
+
+	/***
+	 * A device to collect.
+	 */
+	private class Job {
+		final ASA device;
+		final String network;
+		final CompletableFuture<Result> future = new CompletableFuture<>();
+
+		Job (ASA device, String network) {
+			this.device = device;
+			this.network = network;
+		}
+
+		/**
+		 * Every failure, an Error too, e.g) OutOfMemoryError, completes the future with a Result, since
+		 * collect waits for all of them.
+		 */
+		void fetch () {
+			long start = System.nanoTime();
+			String runningConfig;
+			try {
+				runningConfig = device.getRunningConfig(client);
+			} catch (Throwable e) {
+				future.complete(new Result(device, null, e, millisSince(start), 0));
+				return;
+			}
+			long fetchMillis = millisSince(start);
+			try {
+				parsePool.execute(() -> parse(runningConfig, fetchMillis));
+			} catch (RuntimeException e) {
+				// shut down
+				future.complete(new Result(device, null, e, fetchMillis, 0));
+			}
+		}
+
+		void parse (String runningConfig, long fetchMillis) {
+			long start = System.nanoTime();
+			try {
+				ASA.Configuration configuration = new ASA.Configuration(runningConfig, network);
+				future.complete(new Result(device, configuration, null, fetchMillis, millisSince(start)));
+			} catch (Throwable e) {
+				future.complete(new Result(device, null, e, fetchMillis, millisSince(start)));
+			}
+		}
+	}
+
+	private static long millisSince (long startNanos) {
+		return (System.nanoTime() - startNanos) / 1000000;
+	}
+
+	/**
+	 * Stop the threads. Devices already started complete.
+	 */
+	public void shutdown () {
+		fetchPool.shutdown();
+		parsePool.shutdown();
+	}
+
+	/***
+	 * For test only
+	 * Example:
+	 *     java FleetCollector 192.168.103.1/24 cisco cisco 10.28.1.1 10.28.2.1
+	 * @param args String[] network user password addresses...
+	 */
+	public static void main (String[] args) throws InterruptedException {
+		if (args.length < 4) {
+			System.out.println("Usage:\n  java FleetCollector <network> <user> <password> <address>...");
+			System.exit(-1);
+		}
+		List<ASA> devices = new ArrayList<>();
+		for (String address: Arrays.asList(args).subList(3, args.length)) {
+			devices.add(new ASA(address, args[1], args[2]));
+		}
+		FleetCollector collector = new FleetCollector();
+		for (Result result: collector.collect(devices, args[0])) {
+			System.out.println(result);
+		}
+		collector.shutdown();
+	}
+}
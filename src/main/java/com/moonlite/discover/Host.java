@@ -1,5 +1,7 @@
 package com.moonlite.discover;
 
+import java.util.Objects;
+
 /**
  * 
  * @author Dahai Li
@@ -26,8 +28,14 @@ public class Host {
 			return false;
 		}
 		Host other = (Host)obj;
-		return address.equals(other.address) &&
-				name.equals(other.name) &&
-				os.equals(other.os);
+		// name and os are null when nmap does not report them
+		return Objects.equals(address, other.address) &&
+				Objects.equals(name, other.name) &&
+				Objects.equals(os, other.os);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(address, name, os);
 	}
 }
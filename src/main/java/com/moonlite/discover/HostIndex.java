@@ -0,0 +1,72 @@
+package com.moonlite.discover;
+
+import java.util.List;
+
+/**
+ *
+ * @author Dahai Li
+ *
+ * HostIndex indexes discovered hosts by address, to answer questions such as
+ * "which hosts are in 10.28.0.0/16" without going through all of them.
+ * A host added again with the same address replaces the previous one.
+ * Hosts whose address is not an IPv4 or IPv6 address are not indexed.
+ *
+ * HostIndex is not thread-safe.
+ * @see PrefixTrie
+ */
+public class HostIndex {
+	private final PrefixTrie<Host> trie = new PrefixTrie<>();
+
+	public static HostIndex of (Host[] hosts) {
+		HostIndex index = new HostIndex();
+		index.addAll(hosts);
+		return index;
+	}
+
+	/**
+	 * @param host Host
+	 * @return true if the host is indexed
+	 */
+	public boolean add (Host host) {
+		if (Addresses.toBytes(host.address) == null) {
+			return false;
+		}
+		trie.put(host.address, host);
+		return true;
+	}
+
+	public void addAll (Host[] hosts) {
+		for (Host host: hosts) {
+			add(host);
+		}
+	}
+
+	/**
+	 * @param address String
+	 * @return Host with the address, or null
+	 */
+	public Host get (String address) {
+		return trie.get(address);
+	}
+
+	/**
+	 * @param cidr String, e.g) 10.28.0.0/16 or 2001:db8::/32
+	 * @return Host[] of the hosts in the network, in address order
+	 */
+	public Host[] hostsIn (String cidr) {
+		List<Host> result = trie.valuesIn(cidr);
+		return result.toArray(new Host[result.size()]);
+	}
+
+	/**
+	 * @param cidr String
+	 * @return true if any host is in the network
+	 */
+	public boolean containsAnyIn (String cidr) {
+		return trie.containsAnyIn(cidr);
+	}
+
+	public int size () {
+		return trie.size();
+	}
+}
@@ -0,0 +1,269 @@
+package com.moonlite.discover;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *
+ * @author Dahai Li
+ *
+ * HostSnapshot saves hosts in a compact binary file, which loads much faster than parsing the nmap xml
+ * output again.
+ *
+ * Format, version 1. All numbers are big endian.
+ *     magic        4 bytes, "NMSS"
+ *     version      u16, 1
+ *     flags        u16, 0
+ *     string count int
+ *     strings      for each: int length, then the UTF-8 bytes
+ *     host count   int
+ *     hosts        for each:
+ *                    kind  byte, 4 for IPv4, 6 for IPv6, 0 for any other address
+ *                    addr  4 bytes for IPv4, 16 bytes for IPv6, or an int string id
+ *                    name  int string id, -1 for null
+ *                    os    int string id, -1 for null
+ * Host names, OS names and other addresses share one dictionary of strings, so each distinct
+ * string is stored once.
+ */
+public class HostSnapshot {
+	private static final byte[] MAGIC = {'N', 'M', 'S', 'S'};
+	public static final int VERSION = 1;
+	private static final byte IPV4 = 4;
+	private static final byte IPV6 = 6;
+	private static final byte OTHER = 0;
+	private static final int NONE = -1;
+
+	/**
+	 * @param hosts Host[]
+	 * @param fileName String
+	 * @throws IOException
+	 */
+	public void write (Host[] hosts, String fileName) throws IOException {
+		write(Arrays.asList(hosts), fileName);
+	}
+
+	/**
+	 * @param hosts Iterable<Host>, e.g) a HostTable
+	 * @param fileName String
+	 * @throws IOException
+	 */
+	public void write (Iterable<Host> hosts, String fileName) throws IOException {
+		Map<String, Integer> ids = new HashMap<>();
+		List<String> strings = new ArrayList<>();
+		ByteArrayOutputStream records = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(records);
+		int count = 0;
+		for (Host host: hosts) {
+			writeAddress(out, host.address, ids, strings);
+			out.writeInt(id(host.name, ids, strings));
+			out.writeInt(id(host.os, ids, strings));
+			count++;
+		}
+
+		try (DataOutputStream file = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)))) {
+			file.write(MAGIC);
+			file.writeShort(VERSION);
+			file.writeShort(0);
+			file.writeInt(strings.size());
+			for (String s: strings) {
+				byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+				file.writeInt(bytes.length);
+				file.write(bytes);
+			}
+			file.writeInt(count);
+			records.writeTo(file);
+		}
+	}
+
+	/**
+	 * Read a snapshot by memory-mapping it.
+	 * @param fileName String
+	 * @return Host[]
+	 * @throws IOException if the file is not a snapshot, of a newer version, truncated or corrupted
+	 */
+	public Host[] read (String fileName) throws IOException {
+		List<Host> result = new ArrayList<>();
+		read(fileName, null, result);
+		return result.toArray(new Host[result.size()]);
+	}
+
+	/**
+	 * Read a snapshot into a HostTable, without creating a Host for each row.
+	 * @param fileName String
+	 * @return HostTable
+	 * @throws IOException if the file is not a snapshot, of a newer version, truncated or corrupted
+	 */
+	public HostTable readTable (String fileName) throws IOException {
+		HostTable table = new HostTable();
+		read(fileName, table, null);
+		return table;
+	}
+
+	private void read (String fileName, HostTable table, List<Host> hosts) throws IOException {
+		ByteBuffer buf;
+		try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException(fileName + " is too large to map");
+			}
+			buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		try {
+			byte[] magic = new byte[MAGIC.length];
+			buf.get(magic);
+			if (!Arrays.equals(magic, MAGIC)) {
+				throw new IOException(fileName + " is not a host snapshot");
+			}
+			int version = buf.getShort() & 0xffff;
+			if (version > VERSION) {
+				throw new IOException(fileName + " is of version " + version + ", newer than " + VERSION);
+			}
+			buf.getShort(); // flags
+			// each string takes its length and its bytes
+			String[] strings = new String[count(buf, 4, fileName)];
+			for (int i = 0; i < strings.length; i++) {
+				byte[] bytes = new byte[count(buf, 1, fileName)];
+				buf.get(bytes);
+				strings[i] = new String(bytes, StandardCharsets.UTF_8);
+			}
+			// the smallest row is an IPv4 address, a name and an os
+			int count = count(buf, 13, fileName);
+			byte[] v6 = new byte[16];
+			for (int i = 0; i < count; i++) {
+				String address;
+				byte kind = buf.get();
+				switch (kind) {
+				case IPV4:
+					address = Addresses.formatIPv4(buf.getInt());
+					break;
+				case IPV6:
+					buf.get(v6);
+					address = Addresses.formatIPv6(v6);
+					break;
+				case OTHER:
+					address = string(strings, buf.getInt());
+					break;
+				default:
+					throw new IOException(fileName + " has an unknown address kind " + kind);
+				}
+				String name = string(strings, buf.getInt());
+				String os = string(strings, buf.getInt());
+				if (table != null) {
+					table.add(address, name, os);
+				} else {
+					hosts.add(new Host(address, name, os));
+				}
+			}
+		} catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+			throw new IOException(fileName + " is truncated or corrupted", e);
+		}
+	}
+
+	/**
+	 * Read a count, and check it against the rest of the file before anything of that size is allocated,
+	 * so that a corrupted count fails as an IOException rather than as a NegativeArraySizeException
+	 * or an OutOfMemoryError.
+	 * @param bytesEach int, the smallest size of each of the items counted
+	 */
+	private static int count (ByteBuffer buf, int bytesEach, String fileName) throws IOException {
+		int count = buf.getInt();
+		if (count < 0 || count > buf.remaining() / bytesEach) {
+			throw new IOException(fileName + " is truncated or corrupted: a count of " + count + " with "
+					+ buf.remaining() + " bytes left");
+		}
+		return count;
+	}
+
+	/**
+	 * Only an address that formats back to the same text is packed, so that reading gives the same Host.
+	 */
+	private static void writeAddress (DataOutputStream out, String address, Map<String, Integer> ids,
+			List<String> strings) throws IOException {
+		if (Addresses.isIPv4(address)) {
+			int v4 = Addresses.parseIPv4(address);
+			if (Addresses.formatIPv4(v4).equals(address)) {
+				out.writeByte(IPV4);
+				out.writeInt(v4);
+				return;
+			}
+		}
+		byte[] v6 = Addresses.parseIPv6(address);
+		if (v6 != null && Addresses.formatIPv6(v6).equals(address)) {
+			out.writeByte(IPV6);
+			out.write(v6);
+			return;
+		}
+		out.writeByte(OTHER);
+		out.writeInt(id(address, ids, strings));
+	}
+
+	private static int id (String s, Map<String, Integer> ids, List<String> strings) {
+		if (s == null) {
+			return NONE;
+		}
+		Integer id = ids.get(s);
+		if (id == null) {
+			id = strings.size();
+			ids.put(s, id);
+			strings.add(s);
+		}
+		return id;
+	}
+
+	private static String string (String[] strings, int id) {
+		return id == NONE ? null : strings[id];
+	}
+
+	/***
+	 * For test only: convert nmap xml files to snapshots, and compare their sizes and load times.
+	 * Example:
+	 *     java HostSnapshot www.microsoft.com.xml belize.cisco.com.xml
+	 * @param args String[] xml files
+	 */
+	public static void main (String[] args) {
+		try {
+			HostSnapshot snapshot = new HostSnapshot();
+			for (String xml: args) {
+				String snap = File.createTempFile("hosts", ".snap").getAbsolutePath();
+				new File(snap).deleteOnExit();
+				snapshot.write(new NMap().readXMLFile(xml), snap);
+
+				int rounds = 200;
+				// warm up both paths before timing them
+				for (int i = 0; i < rounds; i++) {
+					new NMap().readXMLFile(xml);
+					snapshot.read(snap);
+				}
+				long start = System.nanoTime();
+				for (int i = 0; i < rounds; i++) {
+					new NMap().readXMLFile(xml);
+				}
+				long xmlNanos = (System.nanoTime() - start) / rounds;
+				start = System.nanoTime();
+				for (int i = 0; i < rounds; i++) {
+					snapshot.read(snap);
+				}
+				long snapNanos = (System.nanoTime() - start) / rounds;
+				System.out.printf("%s: xml %d bytes, %.3f ms; snapshot %d bytes, %.3f ms%n", xml,
+						new File(xml).length(), xmlNanos / 1e6, new File(snap).length(), snapNanos / 1e6);
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.exit(-1);
+		}
+	}
+}
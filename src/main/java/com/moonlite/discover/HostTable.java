@@ -0,0 +1,257 @@
+package com.moonlite.discover;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+/**
+ *
+ * @author Dahai Li
+ *
+ * HostTable stores a large number of hosts in columns of primitives instead of Host objects:
+ *   - an IPv4 address is packed into an int, and an IPv6 address into two longs,
+ *   - host names and OS names are interned into dictionaries, and stored as int ids.
+ * A host is turned back into a Host only when it is read.
+ *
+ * It can be filled directly by the readers, e.g)
+ *     HostTable table = new HostTable();
+ *     new NMap().readXMLFile(fileName, table::add);
+ *
+ * HostTable is not thread-safe.
+ */
+public class HostTable implements Consumer<Host>, Iterable<Host> {
+	private static final byte IPV4 = 0;
+	private static final byte IPV6 = 1;
+	// an address that is not a literal IPv4/IPv6 address in its canonical form, kept as a String
+	private static final byte OTHER = 2;
+	private static final int NONE = -1;
+
+	private int size = 0;
+	private byte[] kinds;
+	// IPV4: the packed address; IPV6: the index into v6High/v6Low; OTHER: the id in otherAddresses
+	private int[] addresses;
+	private int[] names;
+	private int[] oses;
+	private long[] v6High = new long[0];
+	private long[] v6Low = new long[0];
+	private int v6Size = 0;
+
+	private final Dictionary nameDictionary = new Dictionary();
+	private final Dictionary osDictionary = new Dictionary();
+	private final Dictionary otherAddresses = new Dictionary();
+
+	public HostTable () {
+		this(64);
+	}
+
+	/**
+	 * @param capacity int, the number of hosts expected
+	 */
+	public HostTable (int capacity) {
+		capacity = Math.max(capacity, 1);
+		kinds = new byte[capacity];
+		addresses = new int[capacity];
+		names = new int[capacity];
+		oses = new int[capacity];
+	}
+
+	/**
+	 * @param hosts Host[]
+	 * @return HostTable containing the hosts
+	 */
+	public static HostTable of (Host[] hosts) {
+		HostTable table = new HostTable(hosts.length);
+		for (Host host: hosts) {
+			table.add(host);
+		}
+		return table;
+	}
+
+	/**
+	 * Add a host. The Host object is not kept.
+	 * @param host Host
+	 * @return int, the row of the host
+	 */
+	public int add (Host host) {
+		return add(host.address, host.name, host.os);
+	}
+
+	public int add (String address, String name, String os) {
+		if (size == kinds.length) {
+			int capacity = size * 2;
+			kinds = Arrays.copyOf(kinds, capacity);
+			addresses = Arrays.copyOf(addresses, capacity);
+			names = Arrays.copyOf(names, capacity);
+			oses = Arrays.copyOf(oses, capacity);
+		}
+		setAddress(size, address);
+		names[size] = nameDictionary.intern(name);
+		oses[size] = osDictionary.intern(os);
+		return size++;
+	}
+
+	@Override
+	public void accept (Host host) {
+		add(host);
+	}
+
+	public int size () {
+		return size;
+	}
+
+	/**
+	 * @param row int
+	 * @return Host, a new object built from the columns
+	 */
+	public Host get (int row) {
+		return new Host(getAddress(row), getName(row), getOS(row));
+	}
+
+	public String getAddress (int row) {
+		checkRow(row);
+		int value = addresses[row];
+		switch (kinds[row]) {
+		case IPV4:
+			return Addresses.formatIPv4(value);
+		case IPV6:
+			byte[] bytes = new byte[16];
+			for (int i = 0; i < 8; i++) {
+				bytes[i] = (byte) (v6High[value] >>> (56 - 8 * i));
+				bytes[8 + i] = (byte) (v6Low[value] >>> (56 - 8 * i));
+			}
+			return Addresses.formatIPv6(bytes);
+		default:
+			return otherAddresses.get(value);
+		}
+	}
+
+	public String getName (int row) {
+		checkRow(row);
+		return nameDictionary.get(names[row]);
+	}
+
+	public String getOS (int row) {
+		checkRow(row);
+		return osDictionary.get(oses[row]);
+	}
+
+	/**
+	 * @param row int
+	 * @return true if the address of the host is an IPv4 address
+	 */
+	public boolean isIPv4 (int row) {
+		checkRow(row);
+		return kinds[row] == IPV4;
+	}
+
+	/**
+	 * @param row int
+	 * @return int, the packed IPv4 address of the host
+	 * @see Addresses#parseIPv4(String)
+	 */
+	public int getIPv4 (int row) {
+		if (!isIPv4(row)) {
+			throw new IllegalStateException("Not an IPv4 host: " + getAddress(row));
+		}
+		return addresses[row];
+	}
+
+	public Host[] toArray () {
+		Host[] result = new Host[size];
+		for (int i = 0; i < size; i++) {
+			result[i] = get(i);
+		}
+		return result;
+	}
+
+	@Override
+	public Iterator<Host> iterator () {
+		return new Iterator<Host>() {
+			private int row = 0;
+
+			@Override
+			public boolean hasNext () {
+				return row < size;
+			}
+
+			@Override
+			public Host next () {
+				if (row >= size) {
+					throw new NoSuchElementException();
+				}
+				return get(row++);
+			}
+		};
+	}
+
+	/**
+	 * Pack the address, if it can be formatted back to the same text.
+	 */
+	private void setAddress (int row, String address) {
+		if (Addresses.isIPv4(address)) {
+			int v4 = Addresses.parseIPv4(address);
+			if (Addresses.formatIPv4(v4).equals(address)) {
+				kinds[row] = IPV4;
+				addresses[row] = v4;
+				return;
+			}
+		}
+		byte[] v6 = Addresses.parseIPv6(address);
+		if (v6 != null && Addresses.formatIPv6(v6).equals(address)) {
+			if (v6Size == v6High.length) {
+				int capacity = Math.max(16, v6Size * 2);
+				v6High = Arrays.copyOf(v6High, capacity);
+				v6Low = Arrays.copyOf(v6Low, capacity);
+			}
+			long high = 0;
+			long low = 0;
+			for (int i = 0; i < 8; i++) {
+				high = (high << 8) | (v6[i] & 0xff);
+				low = (low << 8) | (v6[8 + i] & 0xff);
+			}
+			v6High[v6Size] = high;
+			v6Low[v6Size] = low;
+			kinds[row] = IPV6;
+			addresses[row] = v6Size++;
+			return;
+		}
+		kinds[row] = OTHER;
+		addresses[row] = otherAddresses.intern(address);
+	}
+
+	private void checkRow (int row) {
+		if (row < 0 || row >= size) {
+			throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+		}
+	}
+
+	/**
+	 * Dictionary gives each distinct string an int id. null has the id NONE.
+	 */
+	private static class Dictionary {
+		private final Map<String, Integer> ids = new HashMap<>();
+		private final List<String> values = new ArrayList<>();
+
+		int intern (String value) {
+			if (value == null) {
+				return NONE;
+			}
+			Integer id = ids.get(value);
+			if (id == null) {
+				id = values.size();
+				ids.put(value, id);
+				values.add(value);
+			}
+			return id;
+		}
+
+		String get (int id) {
+			return id == NONE ? null : values.get(id);
+		}
+	}
+}
@@ -1,20 +1,16 @@
 package com.moonlite.discover;
 
-import java.io.PrintStream;
-
 /***
- * 
+ *
  * @author Dahai Li
  * JRun let you run shell command in Java.
+ * The output of the command is copied to stdout and stderr as it runs.
  */
 public class JRun {
 	public static void main(String[] args) {
-		Shell sh = new Shell();
 		try {
-			int rc = sh.run(args);
-			PrintStream out = (rc == 0)? System.out : System.err;
-			out.print(rc == 0? sh.getStdOut(): sh.getStdErr());
-			out.close();
+			int rc = new ProcessRunner().run(args, System.out, System.err).getExitCode();
+			System.out.close();
 			System.exit(rc);
 		} catch (Exception e) {
 			e.printStackTrace();
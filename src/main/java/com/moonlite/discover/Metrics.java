@@ -0,0 +1,325 @@
+package com.moonlite.discover;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+/**
+ *
+ * @author Dahai Li
+ *
+ * Metrics is the registry of the counters and latency histograms of the hot paths: running nmap,
+ * parsing its xml, fetching a page over https, and extracting an ASA configuration.
+ *   - A Counter is a LongAdder, so threads that count at the same time do not contend.
+ *   - A Histogram records durations into log-linear buckets, like HdrHistogram: each power of 2 is
+ *     split into 16 buckets, so a percentile is within 1/16 of the true value, with a fixed array of
+ *     buckets and no lock to record.
+ * The metrics are created on first use and are never removed. A hot path keeps its metric in a static
+ * field, so that recording does not look the name up.
+ *
+ * The metrics are exported through JMX as com.moonlite.discover:type=Metrics, with an attribute per
+ * counter, and <name>.count, .mean, .p50, .p90, .p99 and .max (in milliseconds) per histogram.
+ * dump gives the same as text.
+ */
+public final class Metrics {
+	public static final String OBJECT_NAME = "com.moonlite.discover:type=Metrics";
+
+	private static final Map<String, Counter> counters = new ConcurrentHashMap<>();
+	private static final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+	static {
+		register();
+	}
+
+	private Metrics () {
+	}
+
+	/***
+	 *
+	 * Counter is a count that only goes up.
+	 *
+	 */
+	public static final class Counter {
+		private final LongAdder count = new LongAdder();
+
+		public void increment () {
+			count.increment();
+		}
+
+		public void add (long n) {
+			count.add(n);
+		}
+
+		public long get () {
+			return count.sum();
+		}
+	}
+
+	/***
+	 *
+	 * Histogram is the distribution of durations in nanoseconds.
+	 *
+	 */
+	public static final class Histogram {
+		private static final int SUB_BITS = 4;
+		private static final int SUB = 1 << SUB_BITS;
+		// values below 2 * SUB have a bucket each, then SUB buckets for each power of 2 up to 2^63
+		private static final int BUCKETS = (64 - SUB_BITS) * SUB;
+
+		private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+		private final LongAdder count = new LongAdder();
+		private final LongAdder sum = new LongAdder();
+		private final AtomicLong max = new AtomicLong();
+
+		/**
+		 * @param nanos long, a duration, negative ones count as 0
+		 */
+		public void record (long nanos) {
+			if (nanos < 0) {
+				nanos = 0;
+			}
+			buckets.incrementAndGet(index(nanos));
+			count.increment();
+			sum.add(nanos);
+			long m;
+			while (nanos > (m = max.get()) && !max.compareAndSet(m, nanos)) {
+			}
+		}
+
+		/**
+		 * @param startNanos long, from System.nanoTime() when the operation started
+		 */
+		public void recordSince (long startNanos) {
+			record(System.nanoTime() - startNanos);
+		}
+
+		public long getCount () {
+			return count.sum();
+		}
+
+		public long getMax () {
+			return max.get();
+		}
+
+		/**
+		 * @return double, the mean in nanoseconds, 0 if nothing is recorded
+		 */
+		public double getMean () {
+			long n = count.sum();
+			return n == 0 ? 0 : (double) sum.sum() / n;
+		}
+
+		/**
+		 * @param percentile double, from 0 to 100
+		 * @return long, the highest value in nanoseconds of the bucket at the percentile, at most the max;
+		 *         0 if nothing is recorded
+		 */
+		public long getPercentile (double percentile) {
+			long n = count.sum();
+			if (n == 0) {
+				return 0;
+			}
+			// the rank of the value, from 1 to n
+			long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+			long seen = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				seen += buckets.get(i);
+				if (seen >= rank) {
+					return Math.min(highest(i), getMax());
+				}
+			}
+			// records that came in while counting
+			return getMax();
+		}
+
+		static int index (long value) {
+			if (value < 2 * SUB) {
+				return (int) value;
+			}
+			int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+			return shift * SUB + (int) (value >>> shift);
+		}
+
+		/**
+		 * @return long, the highest value that falls in the bucket
+		 */
+		static long highest (int index) {
+			if (index < 2 * SUB) {
+				return index;
+			}
+			int shift = index / SUB - 1;
+			long lowest = (long) (index % SUB + SUB) << shift;
+			return lowest + (1L << shift) - 1;
+		}
+	}
+
+	/**
+	 * @param name String, e.g) "http.get.errors"
+	 * @return Counter of the name, created on first use
+	 */
+	public static Counter counter (String name) {
+		return counters.computeIfAbsent(name, n -> new Counter());
+	}
+
+	/**
+	 * @param name String, e.g) "http.get"
+	 * @return Histogram of the name, created on first use
+	 */
+	public static Histogram histogram (String name) {
+		return histograms.computeIfAbsent(name, n -> new Histogram());
+	}
+
+	/**
+	 * @return String, a line per metric sorted by name, e.g)
+	 *         http.get count=12 mean=35.210 p50=31.457 p90=52.429 p99=62.915 max=63.001 ms
+	 *         http.get.errors 1
+	 */
+	public static String dump () {
+		StringBuilder buf = new StringBuilder();
+		for (Map.Entry<String, Object> metric: sorted().entrySet()) {
+			buf.append(metric.getKey());
+			if (metric.getValue() instanceof Counter) {
+				buf.append(' ').append(((Counter) metric.getValue()).get());
+			} else {
+				Histogram h = (Histogram) metric.getValue();
+				buf.append(" count=").append(h.getCount())
+					.append(String.format(" mean=%.3f p50=%.3f p90=%.3f p99=%.3f max=%.3f ms",
+						millis(h.getMean()), millis(h.getPercentile(50)), millis(h.getPercentile(90)),
+						millis(h.getPercentile(99)), millis(h.getMax())));
+			}
+			buf.append('\n');
+		}
+		return buf.toString();
+	}
+
+	private static Map<String, Object> sorted () {
+		Map<String, Object> metrics = new TreeMap<>();
+		metrics.putAll(counters);
+		metrics.putAll(histograms);
+		return metrics;
+	}
+
+	private static double millis (double nanos) {
+		return nanos / 1000000;
+	}
+
+	/**
+	 * Register the MBean with the platform MBean server, once per class loader that loads Metrics.
+	 */
+	private static void register () {
+		try {
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+				ManagementFactory.getPlatformMBeanServer().registerMBean(new MBean(), name);
+			}
+		} catch (JMException | SecurityException e) {
+			// metrics are still recorded, and available from dump
+			e.printStackTrace();
+		}
+	}
+
+	/***
+	 * The metrics as read-only JMX attributes. The attributes are listed each time, as metrics are
+	 * created on first use.
+	 */
+	private static class MBean implements DynamicMBean {
+		private static final String[] STATS = {"count", "mean", "p50", "p90", "p99", "max"};
+
+		@Override
+		public Object getAttribute (String attribute) throws AttributeNotFoundException {
+			Counter counter = counters.get(attribute);
+			if (counter != null) {
+				return counter.get();
+			}
+			int dot = attribute.lastIndexOf('.');
+			Histogram h = dot < 0 ? null : histograms.get(attribute.substring(0, dot));
+			if (h != null) {
+				switch (attribute.substring(dot + 1)) {
+				case "count":
+					return h.getCount();
+				case "mean":
+					return millis(h.getMean());
+				case "p50":
+					return millis(h.getPercentile(50));
+				case "p90":
+					return millis(h.getPercentile(90));
+				case "p99":
+					return millis(h.getPercentile(99));
+				case "max":
+					return millis(h.getMax());
+				}
+			}
+			throw new AttributeNotFoundException(attribute);
+		}
+
+		@Override
+		public AttributeList getAttributes (String[] attributes) {
+			AttributeList list = new AttributeList();
+			for (String attribute: attributes) {
+				try {
+					list.add(new Attribute(attribute, getAttribute(attribute)));
+				} catch (AttributeNotFoundException e) {
+					// left out, as DynamicMBean expects
+				}
+			}
+			return list;
+		}
+
+		@Override
+		public void setAttribute (Attribute attribute) throws AttributeNotFoundException {
+			throw new AttributeNotFoundException("read-only: " + attribute.getName());
+		}
+
+		@Override
+		public AttributeList setAttributes (AttributeList attributes) {
+			return new AttributeList();
+		}
+
+		@Override
+		public Object invoke (String actionName, Object[] params, String[] signature) throws ReflectionException {
+			if (actionName.equals("dump")) {
+				return dump();
+			}
+			throw new ReflectionException(new NoSuchMethodException(actionName));
+		}
+
+		@Override
+		public MBeanInfo getMBeanInfo () {
+			List<MBeanAttributeInfo> attributes = new ArrayList<>();
+			for (Map.Entry<String, Object> metric: sorted().entrySet()) {
+				if (metric.getValue() instanceof Counter) {
+					attributes.add(new MBeanAttributeInfo(metric.getKey(), "long", "counter", true, false, false));
+				} else {
+					for (String stat: STATS) {
+						boolean isCount = stat.equals("count");
+						attributes.add(new MBeanAttributeInfo(metric.getKey() + "." + stat, isCount ? "long" : "double",
+								isCount ? "count" : stat + " in milliseconds", true, false, false));
+					}
+				}
+			}
+			MBeanOperationInfo dump = new MBeanOperationInfo("dump", "all the metrics as text",
+					new MBeanParameterInfo[0], "java.lang.String", MBeanOperationInfo.INFO);
+			return new MBeanInfo(Metrics.class.getName(), "Discover metrics",
+					attributes.toArray(new MBeanAttributeInfo[attributes.size()]), null,
+					new MBeanOperationInfo[] {dump}, null);
+		}
+	}
+}
@@ -2,7 +2,12 @@ package com.moonlite.discover;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import javax.xml.parsers.*;
 
@@ -17,7 +22,10 @@ import org.xml.sax.SAXException;
  * Nmap uses nmap command to discover network hosts 
  * @see Host
  */
-public class NMap implements Discover {
+public class NMap implements Discover, AsyncDiscover {
+	private static final Metrics.Histogram PARSE = Metrics.histogram("nmap.parse.dom");
+	private static final Metrics.Histogram EXEC = Metrics.histogram("nmap.exec");
+	private static final Metrics.Counter EXEC_FAILURES = Metrics.counter("nmap.exec.failures");
 
 	
 	/**
@@ -30,10 +38,41 @@ public class NMap implements Discover {
 	 */
 	public Host[] readXMLFile (String fileName) throws ParserConfigurationException, SAXException, IOException {
 		ArrayList<Host> result = new ArrayList<>();
+		readXMLFile(fileName, result::add);
+		Host[] r = new Host[result.size()];
+		result.toArray(r);
+		return r;
+	}
+
+	/**
+	 * Read the file, and pass each host to the consumer, e.g) HostTable::add.
+	 * @param fileName string, the filename containing the output from running "nmap -oX <filename> <network>"
+	 * @param consumer Consumer<Host>
+	 */
+	public void readXMLFile (String fileName, Consumer<Host> consumer) throws ParserConfigurationException, SAXException, IOException {
+		Object span = Events.beginParse();
+		long start = System.nanoTime();
+		DocumentBuilder docBuilder = XMLParsers.documentBuilder();
+		int hosts = readDocument(docBuilder.parse(new File(fileName)), consumer);
+		PARSE.recordSince(start);
+		Events.endParse(span, "dom", fileName, hosts);
+	}
+
+	/**
+	 * Read the output of "nmap -oX - <network>" from a stream, and pass each host to the consumer.
+	 * It is not timed as a parse: reading the stream mostly waits for nmap.
+	 * @param in InputStream of the xml
+	 * @param consumer Consumer<Host>
+	 */
+	public void readXML (InputStream in, Consumer<Host> consumer) throws ParserConfigurationException, SAXException, IOException {
+		DocumentBuilder docBuilder = XMLParsers.documentBuilder();
+		readDocument(docBuilder.parse(in), consumer);
+	}
 
-		DocumentBuilderFactory docBuilderFactory = DocumentBuilderFactory.newInstance();
-		DocumentBuilder docBuilder = docBuilderFactory.newDocumentBuilder();
-		Document doc = docBuilder.parse(new File(fileName));
+	/**
+	 * @return int, the number of hosts
+	 */
+	private int readDocument (Document doc, Consumer<Host> consumer) {
 
         /*** A sample host element in the XML file:
 		<host starttime="1415838190" endtime="1415838197">
@@ -76,32 +115,50 @@ public class NMap implements Discover {
 		NodeList hosts = doc.getElementsByTagName("host");
 		for (int i = 0; i < hosts.getLength(); i++) {
 			Element host = (Element) hosts.item(i);
-			result.add(new Host(getHostAddress(host), getHostName(host),
+			consumer.accept(new Host(getHostAddress(host), getHostName(host),
 					getHostOS(host)));
 		}
-		Host[] r = new Host[result.size()];
-		result.toArray(r);
-		return r;
+		return hosts.getLength();
 	}
 
 
 	public Host[] runCommand (String network) throws IOException, InterruptedException, ParserConfigurationException, SAXException {
-		Host[] result = null;
-		String fileName = getTempFileName();
+		return runCommand(network, null);
+	}
+
+	/***
+	 * Discover the network by running "nmap -oX - <network>", and parse its stdout as it comes:
+	 * nothing is written to disk.
+	 * @param network String
+	 * @param tee OutputStream, which gets a copy of the raw xml, or null
+	 * @return Host[], or null if nmap fails
+	 */
+	public Host[] runCommand (String network, OutputStream tee) throws IOException, InterruptedException, ParserConfigurationException, SAXException {
+		ArrayList<Host> result = new ArrayList<>();
+		long start = System.nanoTime();
 		/***
 		 * -O option is to detect OS. It can only be run under privileged mode.
 		 */
-		if (new Shell().run("nmap", "-F", "-O", "-oX", fileName, network) == 0) {
-			result = readXMLFile(fileName);
+		try (ProcessRunner.Running nmap = new ProcessRunner().start(NMapCommand.build("-", network))) {
+			InputStream in = tee == null ? nmap.getStdOut() : ProcessRunner.tee(nmap.getStdOut(), tee);
+			try {
+				readXML(in, result::add);
+			} catch (SAXException e) {
+				// nmap writes no document at all when it cannot start the scan, e.g. -O without root.
+				if (nmap.waitFor().getExitCode() != 0) {
+					EXEC_FAILURES.increment();
+					return null;
+				}
+				throw e;
+			}
+			if (nmap.waitFor().getExitCode() != 0) {
+				EXEC_FAILURES.increment();
+				return null;
+			}
+		} finally {
+			EXEC.recordSince(start);
 		}
-		return result;
-	}
-
-	static private String getTempFileName () throws IOException {
-		File f = File.createTempFile("nmap", null);
-		String result = f.getAbsolutePath();
-		f.deleteOnExit();
-		return result;
+		return result.toArray(new Host[result.size()]);
 	}
 	
 	/**
@@ -159,6 +216,15 @@ public class NMap implements Discover {
 		}
 	}
 
+	/**
+	 * Run nmap in the background, see AsyncDiscover.
+	 * No thread waits for nmap while it runs.
+	 */
+	@Override
+	public CompletableFuture<Host[]> discoverAsync (ScanTarget target, long timeout, TimeUnit unit) {
+		return AsyncScan.start(target, timeout, unit, this::readXMLFile);
+	}
+
 	
 	private static void printHelp () {
 		System.out.print("Usage: \n  java nmap -f <filename>, or\n  java nmap -n <network>\n" +
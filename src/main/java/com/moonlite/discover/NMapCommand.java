@@ -0,0 +1,52 @@
+package com.moonlite.discover;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 
+ * @author Dahai Li
+ *
+ * NMapCommand builds the nmap command line used by the NMap readers.
+ */
+final class NMapCommand {
+	/***
+	 * -F scans the 100 most common ports, -O detects OS. -O can only be run under privileged mode.
+	 */
+	static final String[] DEFAULT_OPTIONS = {"-F", "-O"};
+
+	/***
+	 * -sn only finds the live hosts, by a ping scan, without scanning any port.
+	 */
+	static final String[] PING_OPTIONS = {"-sn"};
+
+	private NMapCommand () {
+	}
+
+	/**
+	 * @param output String, the file for the xml output, or "-" for stdout
+	 * @param network String, one or more targets separated by spaces, e.g) "10.28.0.0/16 10.29.1.1"
+	 * @return String[] "nmap -F -O -oX <output> <target>..."
+	 */
+	static String[] build (String output, String network) {
+		return build(output, network, DEFAULT_OPTIONS);
+	}
+
+	/**
+	 * @param output String, the file for the xml output, or "-" for stdout
+	 * @param network String, one or more targets separated by spaces. nmap takes each target as
+	 *        a separate argument.
+	 * @param options String[], nmap options
+	 * @return String[] "nmap <options> -oX <output> <target>..."
+	 */
+	static String[] build (String output, String network, String... options) {
+		List<String> args = new ArrayList<>();
+		args.add("nmap");
+		args.addAll(Arrays.asList(options));
+		args.add("-oX");
+		args.add(output);
+		args.addAll(Arrays.asList(network.trim().split("\\s+")));
+		return args.toArray(new String[args.size()]);
+	}
+}
@@ -0,0 +1,455 @@
+package com.moonlite.discover;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/***
+ *
+ * @author Dahai Li
+ *
+ * Read nmap xml output by scanning the bytes of a memory-mapped file.
+ * It only looks for the structures that NMap extracts:
+ *    <host ...>
+ *        <address addr="..." />
+ *        <hostnames> <hostname name="..." /> </hostnames>
+ *        <os> <osmatch name="..." /> </os>
+ *    </host>
+ * and records where their values are in the file. A value is decoded into a String only when it is asked for,
+ * so nothing is allocated for the rest of the document, nor for the fields a caller never reads.
+ *
+ * The scanner is not a full XML parser: it does not validate the document, and it expects the well-formed
+ * output of nmap -oX. Files larger than 2GB are not supported.
+ * @see NMap
+ */
+public class NMapMapped implements Discover {
+	private static final Metrics.Histogram EXEC = Metrics.histogram("nmap.exec");
+	private static final Metrics.Counter EXEC_FAILURES = Metrics.counter("nmap.exec.failures");
+
+	private static final byte[] HOST = bytes("host");
+	private static final byte[] ADDRESS = bytes("address");
+	private static final byte[] HOSTNAMES = bytes("hostnames");
+	private static final byte[] HOSTNAME = bytes("hostname");
+	private static final byte[] OS = bytes("os");
+	private static final byte[] OSMATCH = bytes("osmatch");
+	private static final byte[] ADDR_ATTR = bytes("addr");
+	private static final byte[] NAME_ATTR = bytes("name");
+
+	/**
+	 *
+	 * @param fileName string, the filename containing the output from running "nmap -oX <filename> <network>"
+	 * @return list of Host's
+	 * @throws IOException
+	 */
+	public Host[] readXMLFile (String fileName) throws IOException {
+		Object span = Events.beginParse();
+		Host[] hosts = map(fileName).toArray();
+		Events.endParse(span, "mapped", fileName, hosts.length);
+		return hosts;
+	}
+
+	/**
+	 * Map the file and locate the hosts in it, without decoding any of their fields.
+	 * @param fileName string, the filename containing the output from running "nmap -oX <filename> <network>"
+	 * @return MappedHosts
+	 * @throws IOException
+	 */
+	public MappedHosts map (String fileName) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException(fileName + " is too large to map: " + size + " bytes");
+			}
+			// The mapping stays valid after the channel is closed.
+			return scan(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+		}
+	}
+
+	/**
+	 * Locate the hosts in nmap xml output.
+	 * @param buf ByteBuffer, the xml document from position 0 to the limit
+	 * @return MappedHosts
+	 */
+	MappedHosts scan (ByteBuffer buf) {
+		MappedHosts hosts = new MappedHosts(buf);
+		int end = buf.limit();
+		int pos = 0;
+		boolean inHost = false;
+		boolean inHostnames = false;
+		boolean inOS = false;
+		while ((pos = indexOf(buf, (byte) '<', pos, end)) >= 0) {
+			if (startsWith(buf, pos, "<!--")) {
+				pos = skipComment(buf, pos, end);
+				continue;
+			}
+			int tagEnd = tagEnd(buf, pos, end);
+			boolean closing = pos + 1 < end && buf.get(pos + 1) == '/';
+			int nameStart = closing ? pos + 2 : pos + 1;
+			if (closing) {
+				if (isTag(buf, nameStart, HOST)) {
+					if (inHost) {
+						hosts.endHost();
+					}
+					inHost = false;
+				} else if (isTag(buf, nameStart, HOSTNAMES)) {
+					inHostnames = false;
+				} else if (isTag(buf, nameStart, OS)) {
+					inOS = false;
+				}
+			} else if (isTag(buf, nameStart, HOST)) {
+				hosts.startHost();
+				inHost = true;
+				inHostnames = false;
+				inOS = false;
+				if (buf.get(tagEnd - 1) == '/') {
+					hosts.endHost();
+					inHost = false;
+				}
+			} else if (inHost) {
+				if (isTag(buf, nameStart, ADDRESS)) {
+					hosts.setField(MappedHosts.ADDRESS, buf, pos, tagEnd, ADDR_ATTR);
+				} else if (isTag(buf, nameStart, HOSTNAMES)) {
+					inHostnames = buf.get(tagEnd - 1) != '/';
+				} else if (inHostnames && isTag(buf, nameStart, HOSTNAME)) {
+					hosts.setField(MappedHosts.NAME, buf, pos, tagEnd, NAME_ATTR);
+				} else if (isTag(buf, nameStart, OS)) {
+					inOS = buf.get(tagEnd - 1) != '/';
+				} else if (inOS && isTag(buf, nameStart, OSMATCH)) {
+					hosts.setField(MappedHosts.OS, buf, pos, tagEnd, NAME_ATTR);
+				}
+			}
+			pos = tagEnd;
+		}
+		return hosts;
+	}
+
+	/**
+	 * @return the position right after the '>' that closes the tag starting at pos
+	 */
+	private static int tagEnd (ByteBuffer buf, int pos, int end) {
+		byte quote = 0;
+		for (int i = pos + 1; i < end; i++) {
+			byte b = buf.get(i);
+			if (quote != 0) {
+				if (b == quote) {
+					quote = 0;
+				}
+			} else if (b == '"' || b == '\'') {
+				quote = b;
+			} else if (b == '>') {
+				return i + 1;
+			}
+		}
+		return end;
+	}
+
+	private static int skipComment (ByteBuffer buf, int pos, int end) {
+		for (int i = pos + 4; i + 2 < end; i++) {
+			if (buf.get(i) == '-' && buf.get(i + 1) == '-' && buf.get(i + 2) == '>') {
+				return i + 3;
+			}
+		}
+		return end;
+	}
+
+	/**
+	 * @return true if the tag name at pos is name, i.e. it is followed by a space, '>' or '/'.
+	 */
+	private static boolean isTag (ByteBuffer buf, int pos, byte[] name) {
+		int end = pos + name.length;
+		if (end >= buf.limit()) {
+			return false;
+		}
+		for (int i = 0; i < name.length; i++) {
+			if (buf.get(pos + i) != name[i]) {
+				return false;
+			}
+		}
+		byte b = buf.get(end);
+		return b == '>' || b == '/' || isSpace(b);
+	}
+
+	private static boolean startsWith (ByteBuffer buf, int pos, String s) {
+		if (pos + s.length() > buf.limit()) {
+			return false;
+		}
+		for (int i = 0; i < s.length(); i++) {
+			if (buf.get(pos + i) != s.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int indexOf (ByteBuffer buf, byte b, int from, int end) {
+		for (int i = from; i < end; i++) {
+			if (buf.get(i) == b) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean isSpace (byte b) {
+		return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+	}
+
+	private static byte[] bytes (String s) {
+		return s.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/***
+	 *
+	 * MappedHosts is the hosts located in a mapped nmap xml file.
+	 * Each field of a host is kept as the start and end offsets of its value in the mapping,
+	 * and is decoded when it is read.
+	 *
+	 */
+	public static class MappedHosts {
+		static final int ADDRESS = 0;
+		static final int NAME = 2;
+		static final int OS = 4;
+		private static final int FIELDS = 6;
+		// An element without the attribute has an empty value, as in DOM.
+		private static final int EMPTY = -2;
+		private static final int ABSENT = -1;
+
+		private final ByteBuffer buf;
+		// FIELDS ints per host: the start and end offsets of address, name and os.
+		private int[] offsets = new int[FIELDS * 64];
+		private int size = 0;
+		private int current = -1;
+
+		MappedHosts (ByteBuffer buf) {
+			this.buf = buf;
+		}
+
+		public int size () {
+			return size;
+		}
+
+		public String getAddress (int i) {
+			return decode(i, ADDRESS);
+		}
+
+		public String getName (int i) {
+			return decode(i, NAME);
+		}
+
+		public String getOS (int i) {
+			return decode(i, OS);
+		}
+
+		public Host get (int i) {
+			return new Host(getAddress(i), getName(i), getOS(i));
+		}
+
+		public Host[] toArray () {
+			Host[] result = new Host[size];
+			for (int i = 0; i < size; i++) {
+				result[i] = get(i);
+			}
+			return result;
+		}
+
+		void startHost () {
+			if ((size + 1) * FIELDS > offsets.length) {
+				offsets = Arrays.copyOf(offsets, offsets.length * 2);
+			}
+			current = size * FIELDS;
+			Arrays.fill(offsets, current, current + FIELDS, ABSENT);
+		}
+
+		void endHost () {
+			size++;
+			current = -1;
+		}
+
+		/**
+		 * Record the value of the attribute in the tag, unless the field already has one.
+		 */
+		void setField (int field, ByteBuffer buf, int tagStart, int tagEnd, byte[] attribute) {
+			int i = current + field;
+			if (current < 0 || offsets[i] != ABSENT) {
+				return;
+			}
+			offsets[i] = EMPTY;
+			int pos = tagStart + 1;
+			while (pos < tagEnd) {
+				// skip the tag name or the previous attribute value, then the spaces after it
+				while (pos < tagEnd && !isSpace(buf.get(pos))) {
+					byte b = buf.get(pos++);
+					if (b == '"' || b == '\'') {
+						while (pos < tagEnd && buf.get(pos) != b) {
+							pos++;
+						}
+						pos++;
+					}
+				}
+				while (pos < tagEnd && isSpace(buf.get(pos))) {
+					pos++;
+				}
+				int nameEnd = pos;
+				while (nameEnd < tagEnd && buf.get(nameEnd) != '=' && !isSpace(buf.get(nameEnd))) {
+					nameEnd++;
+				}
+				boolean match = nameEnd - pos == attribute.length;
+				for (int k = 0; match && k < attribute.length; k++) {
+					match = buf.get(pos + k) == attribute[k];
+				}
+				int q = nameEnd;
+				while (q < tagEnd && (isSpace(buf.get(q)) || buf.get(q) == '=')) {
+					q++;
+				}
+				if (q >= tagEnd || (buf.get(q) != '"' && buf.get(q) != '\'')) {
+					return;
+				}
+				byte quote = buf.get(q);
+				int valueEnd = q + 1;
+				while (valueEnd < tagEnd && buf.get(valueEnd) != quote) {
+					valueEnd++;
+				}
+				if (match) {
+					offsets[i] = q + 1;
+					offsets[i + 1] = valueEnd;
+					return;
+				}
+				pos = valueEnd + 1;
+			}
+		}
+
+		/**
+		 * Decode the field the way a DOM parser presents an attribute value: with entity references
+		 * replaced, white spaces normalized, and then trimmed as NMap does.
+		 */
+		private String decode (int host, int field) {
+			if (host < 0 || host >= size) {
+				throw new IndexOutOfBoundsException("Host " + host + " of " + size);
+			}
+			int i = host * FIELDS + field;
+			int start = offsets[i];
+			if (start == ABSENT) {
+				return null;
+			}
+			if (start == EMPTY) {
+				return "";
+			}
+			byte[] bytes = new byte[offsets[i + 1] - start];
+			for (int k = 0; k < bytes.length; k++) {
+				byte b = buf.get(start + k);
+				bytes[k] = isSpace(b) ? (byte) ' ' : b;
+			}
+			String value = new String(bytes, StandardCharsets.UTF_8);
+			if (value.indexOf('&') >= 0) {
+				value = unescape(value);
+			}
+			return value.trim();
+		}
+
+		private static String unescape (String value) {
+			StringBuilder result = new StringBuilder(value.length());
+			int pos = 0;
+			int amp;
+			while ((amp = value.indexOf('&', pos)) >= 0) {
+				int semi = value.indexOf(';', amp);
+				if (semi < 0) {
+					break;
+				}
+				result.append(value, pos, amp);
+				String entity = value.substring(amp + 1, semi);
+				switch (entity) {
+				case "amp":
+					result.append('&');
+					break;
+				case "lt":
+					result.append('<');
+					break;
+				case "gt":
+					result.append('>');
+					break;
+				case "quot":
+					result.append('"');
+					break;
+				case "apos":
+					result.append('\'');
+					break;
+				default:
+					if (entity.startsWith("#x")) {
+						result.appendCodePoint(Integer.parseInt(entity.substring(2), 16));
+					} else if (entity.startsWith("#")) {
+						result.appendCodePoint(Integer.parseInt(entity.substring(1)));
+					} else {
+						result.append(value, amp, semi + 1);
+					}
+				}
+				pos = semi + 1;
+			}
+			return result.append(value, pos, value.length()).toString();
+		}
+	}
+
+	/***
+	 * Discover the network by running "nmap -oX <file> <network>". The file is needed to map it, and
+	 * is deleted as soon as the hosts are read from it, rather than when the JVM exits.
+	 * @param network String
+	 * @return Host[], or null if nmap fails
+	 */
+	public Host[] runCommand (String network) throws IOException, InterruptedException {
+		File file = File.createTempFile("nmap", ".xml");
+		try {
+			/***
+			 * -O option is to detect OS. It can only be run under privileged mode.
+			 */
+			long start = System.nanoTime();
+			int exit = new ProcessRunner().run(NMapCommand.build(file.getAbsolutePath(), network)).getExitCode();
+			EXEC.recordSince(start);
+			if (exit != 0) {
+				EXEC_FAILURES.increment();
+				return null;
+			}
+			return readXMLFile(file.getAbsolutePath());
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Override
+	public Host[] discover (Object target) {
+		try {
+			return runCommand((String)target);
+		} catch (Exception e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/***
+	 * For test only
+	 * @param args
+	 */
+	public static void main (String[] args) {
+		try {
+			if (args.length != 1) {
+				System.out.print("Usage: \n  java NMapMapped <filename>\n");
+				System.exit(-1);
+			}
+			Host[] hosts = new NMapMapped().readXMLFile(args[0]);
+			if (hosts.length == 0) {
+				System.out.println("No host detected.");
+				System.exit(1);
+			}
+			for (Host host: hosts) {
+				System.out.println("Address: " + host.address + ", Name: " + host.name + ", OS: " + host.os);
+			}
+			System.exit(0);
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.exit(-1);
+		}
+	}
+}
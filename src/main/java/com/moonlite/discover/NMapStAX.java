@@ -0,0 +1,334 @@
+package com.moonlite.discover;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.function.Consumer;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/***
+ *
+ * @author Dahai Li
+ *
+ * Use StAX, a pull parser, to implement NMap.
+ * Unlike NMap (DOM) and NMapJDOM, it never builds a tree of the document: only the
+ * fields of the current <host> element are kept in memory, so the memory used does
+ * not grow with the size of the nmap output.
+ *
+ */
+public class NMapStAX implements Discover {
+	private static final Metrics.Histogram EXEC = Metrics.histogram("nmap.exec");
+	private static final Metrics.Counter EXEC_FAILURES = Metrics.counter("nmap.exec.failures");
+
+	private final long timeoutMillis;
+	private final String[] options;
+
+	/**
+	 * Run nmap with NMapCommand.DEFAULT_OPTIONS, -F -O, and no timeout.
+	 */
+	public NMapStAX () {
+		this(NMapCommand.DEFAULT_OPTIONS);
+	}
+
+	/**
+	 * @param options String[], the nmap options of runCommand, e.g) "-sn" for a ping scan only
+	 */
+	public NMapStAX (String... options) {
+		this(0, options);
+	}
+
+	/**
+	 * @param timeoutMillis long, how long nmap may run before it is killed, 0 for no timeout
+	 * @param options String[], the nmap options of runCommand
+	 */
+	public NMapStAX (long timeoutMillis, String... options) {
+		this.timeoutMillis = timeoutMillis;
+		this.options = options.clone();
+	}
+
+	/**
+	 *
+	 * @param fileName string, the filename containing the output from running "nmap -oX <filename> <network>"
+	 * @return list of Host's
+	 * @throws XMLStreamException
+	 * @throws IOException
+	 */
+	public Host[] readXMLFile (String fileName) throws XMLStreamException, IOException {
+		ArrayList<Host> result = new ArrayList<>();
+		readXMLFile(fileName, result::add);
+		Host[] r = new Host[result.size()];
+		result.toArray(r);
+		return r;
+	}
+
+	/**
+	 * Read the file, and pass each host to the consumer as soon as its element is parsed.
+	 * @param fileName string, the filename containing the output from running "nmap -oX <filename> <network>"
+	 * @param consumer Consumer<Host>
+	 * @throws XMLStreamException
+	 * @throws IOException
+	 */
+	public void readXMLFile (String fileName, Consumer<Host> consumer) throws XMLStreamException, IOException {
+		Object span = Events.beginParse();
+		try (InputStream in = new BufferedInputStream(new FileInputStream(fileName))) {
+			if (span == null) {
+				readXML(in, consumer);
+			} else {
+				int[] hosts = {0};
+				readXML(in, host -> {
+					hosts[0]++;
+					consumer.accept(host);
+				});
+				Events.endParse(span, "stax", fileName, hosts[0]);
+			}
+		}
+	}
+
+	/**
+	 * Read nmap XML output from a stream. Each host is passed to the consumer when its
+	 * </host> end tag is reached.
+	 *
+	 * A sample host element:
+		<host starttime="1415838190" endtime="1415838197">
+			<status state="up" reason="syn-ack" reason_ttl="249" />
+			<address addr="172.23.204.252" addrtype="ipv4" />
+			<hostnames>
+				<hostname name="asav" type="user" />
+				<hostname name="asav" type="PTR" />
+			</hostnames>
+			<ports>
+				...
+			</ports>
+			<os>
+				<portused state="open" proto="tcp" portid="23" />
+				<osmatch name="Cisco Adaptive Security Appliance (PIX OS 8.4)"
+					accuracy="100" line="16369">
+					...
+				</osmatch>
+			</os>
+			...
+		</host>
+	 * @param in InputStream of the XML document
+	 * @param consumer Consumer<Host>
+	 * @throws XMLStreamException
+	 */
+	public void readXML (InputStream in, Consumer<Host> consumer) throws XMLStreamException {
+		XMLStreamReader reader = XMLParsers.inputFactory().createXMLStreamReader(in);
+		try {
+			HostBuilder host = null;
+			while (reader.hasNext()) {
+				switch (reader.next()) {
+				case XMLStreamConstants.START_ELEMENT:
+					String name = reader.getLocalName();
+					if (name.equals("host")) {
+						host = new HostBuilder();
+					} else if (host != null) {
+						host.startElement(name, reader);
+					}
+					break;
+				case XMLStreamConstants.END_ELEMENT:
+					if (host == null) {
+						break;
+					}
+					if (reader.getLocalName().equals("host")) {
+						consumer.accept(host.build());
+						host = null;
+					} else {
+						host.endElement(reader.getLocalName());
+					}
+					break;
+				default:
+					break;
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/***
+	 * Discover the network by running "nmap -oX - <network>", and parse its stdout as it comes:
+	 * nothing is written to disk.
+	 * @param network String
+	 * @return Host[], or null if nmap fails
+	 */
+	public Host[] runCommand (String network) throws IOException, InterruptedException, XMLStreamException {
+		ArrayList<Host> result = new ArrayList<>();
+		/***
+		 * -O option is to detect OS. It can only be run under privileged mode.
+		 */
+		if (runCommand(network, result::add) != 0) {
+			return null;
+		}
+		return result.toArray(new Host[result.size()]);
+	}
+
+	/***
+	 * Discover the network by running "nmap -oX - <network>", and pass each host to the consumer
+	 * as soon as nmap writes its </host> element, while nmap is still scanning the rest of the network.
+	 * nmap runs with ProcessRunner: its stderr is read in the background, and at the timeout, or if
+	 * the consumer throws, it is killed with the processes it started.
+	 * @param network String
+	 * @param consumer Consumer<Host>, called on the calling thread
+	 * @return exit code of nmap, -1 if it timed out
+	 * @throws IOException
+	 * @throws InterruptedException
+	 * @throws XMLStreamException
+	 */
+	public int runCommand (String network, Consumer<Host> consumer) throws IOException, InterruptedException, XMLStreamException {
+		return run(NMapCommand.build("-", network, options), consumer);
+	}
+
+	/**
+	 * Run a command that writes nmap xml to its stdout, and parse it as it comes.
+	 * @param command String[], e.g) "nmap -oX - 10.28.1.0/24"
+	 * @param consumer Consumer<Host>
+	 * @return int, the exit code of the command, -1 if it timed out
+	 */
+	int run (String[] command, Consumer<Host> consumer) throws IOException, InterruptedException, XMLStreamException {
+		long start = System.nanoTime();
+		try (ProcessRunner.Running nmap = new ProcessRunner(timeoutMillis, 1 << 20).start(command)) {
+			int exit;
+			try {
+				readXML(nmap.getStdOut(), consumer);
+			} catch (XMLStreamException e) {
+				// nmap writes no document at all when it cannot start the scan, e.g. -O without root,
+				// and a killed nmap leaves it unfinished
+				exit = nmap.waitFor().getExitCode();
+				if (exit == 0) {
+					throw e;
+				}
+				EXEC_FAILURES.increment();
+				return exit;
+			}
+			exit = nmap.waitFor().getExitCode();
+			if (exit != 0) {
+				EXEC_FAILURES.increment();
+			}
+			return exit;
+		} finally {
+			EXEC.recordSince(start);
+		}
+	}
+
+	/***
+	 * Collects the fields of the <host> element being parsed.
+	 * It follows the same rules as NMap: the first <address>, the first <hostname> in <hostnames>,
+	 * and the first <osmatch> in <os>.
+	 */
+	private static class HostBuilder {
+		String address = null;
+		String name = null;
+		String os = null;
+		boolean inHostnames = false;
+		boolean inOS = false;
+
+		void startElement (String element, XMLStreamReader reader) {
+			switch (element) {
+			case "address":
+				if (address == null) {
+					address = attribute(reader, "addr");
+				}
+				break;
+			case "hostnames":
+				inHostnames = true;
+				break;
+			case "hostname":
+				if (inHostnames && name == null) {
+					name = attribute(reader, "name");
+				}
+				break;
+			case "os":
+				inOS = true;
+				break;
+			case "osmatch":
+				if (inOS && os == null) {
+					os = attribute(reader, "name");
+				}
+				break;
+			default:
+				break;
+			}
+		}
+
+		void endElement (String element) {
+			if (element.equals("hostnames")) {
+				inHostnames = false;
+			} else if (element.equals("os")) {
+				inOS = false;
+			}
+		}
+
+		Host build () {
+			return new Host(address, name, os);
+		}
+
+		private static String attribute (XMLStreamReader reader, String name) {
+			String value = reader.getAttributeValue(null, name);
+			return value == null ? "" : value.trim();
+		}
+	}
+
+	@Override
+	public Host[] discover (Object target) {
+		try {
+			return runCommand((String)target);
+		} catch (Exception e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	private static void printHelp () {
+		System.out.print("Usage: \n  java nmap -f <filename>, or\n  java nmap -n <network>, or\n  java nmap -l <network>\n" +
+				"Example:\n  java nmap nmap-output.xml\n  java nmap -n www.cisco.com/24\n" +
+				"  java nmap -l www.cisco.com/24, prints each host as soon as it is scanned\n");
+	}
+
+	/***
+	 * For test only
+	 * @param args
+	 */
+	public static void main (String[] args) {
+		try {
+			if (args.length != 2) {
+				printHelp();
+				System.exit(-1);
+			}
+
+			Host[] hosts = null;
+			NMapStAX nmap = new NMapStAX();
+			switch((args[0])) {
+			case "-f":
+				hosts = nmap.readXMLFile(args[1]);
+				break;
+			case "-n":
+				hosts = nmap.discover(args[1]);
+				break;
+			case "-l":
+				System.exit(nmap.runCommand(args[1], host ->
+					System.out.println("Address: " + host.address + ", Name: " + host.name + ", OS: " + host.os)));
+				break;
+			default:
+				printHelp();
+				System.exit(-1);
+			}
+			if (hosts == null || hosts.length == 0) {
+				System.out.println("No host detected.");
+				System.exit(1);
+			}
+			for (Host host: hosts) {
+				System.out.println("Address: " + host.address + ", Name: " + host.name + ", OS: " + host.os);
+			}
+			System.exit(0);
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.exit(-1);
+		}
+	}
+}
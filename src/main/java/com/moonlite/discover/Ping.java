@@ -1,7 +1,6 @@
 package com.moonlite.discover;
 
 import java.io.IOException;
-import java.net.InetAddress;
 
 /**
  * 
@@ -13,10 +12,11 @@ import java.net.InetAddress;
  * Or use this tool:
  * http://javapingtool.com/
  * 
+ * Ping now uses TcpSweep: TCP connect probes, which need no root, instead of isReachable.
+ * To check many addresses, use TcpSweep.discover on the network rather than pinging each.
  */
 public class Ping {
 	static boolean ping(String address) throws IOException {
-		InetAddress inet = InetAddress.getByName(address);
-		return inet.isReachable(5000);
+		return new TcpSweep().isAlive(address);
 	}
 }
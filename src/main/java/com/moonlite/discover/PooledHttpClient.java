@@ -0,0 +1,223 @@
+package com.moonlite.discover;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.AuthCache;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.auth.BasicScheme;
+import org.apache.http.impl.client.BasicAuthCache;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.util.EntityUtils;
+
+/**
+ *
+ * @author Dahai Li
+ *
+ * PooledHttpClient is a long-lived HttpClient for fetching from many devices, e.g) the running-config
+ * of ASA's. ApacheHttpClient builds a client per request, and closes it after, so each request pays a
+ * TCP connect and a full TLS handshake. Here:
+ *   - connections are kept alive in a PoolingHttpClientConnectionManager, with a limit per device
+ *     (route) and in total, and those idle for longer than idleMillis are closed in the background;
+ *   - the SSLContext is created once, so its session cache lets a new connection to a device resume
+ *     the TLS session rather than do a full handshake;
+ *   - each device has its own credentials and basic auth cache, so the credentials are sent with the
+ *     first request, rather than after a 401.
+ * It is thread-safe. shared() is the instance used by ASA.getConfiguration.
+ *
+ * Like ApacheHttpClient, the default trusts any certificate and host name: ASA's usually have
+ * self-signed certificates.
+ */
+public class PooledHttpClient implements Closeable {
+	private static final Metrics.Histogram GET = Metrics.histogram("http.get");
+	private static final Metrics.Counter GET_ERRORS = Metrics.counter("http.get.errors");
+
+	private static PooledHttpClient shared = null;
+
+	private final PoolingHttpClientConnectionManager connectionManager;
+	private final CloseableHttpClient httpClient;
+	private final Map<String, Device> devices = new ConcurrentHashMap<>();
+
+	/***
+	 *
+	 * Reads the body of a 2xx response. The body is consumed after, so that the connection goes
+	 * back to the pool.
+	 *
+	 */
+	public interface EntityReader<T> {
+		T read (HttpEntity entity) throws IOException;
+	}
+
+	/***
+	 * The credentials of a device, with the auth cache that makes them preemptive.
+	 */
+	private static class Device {
+		final String password;
+		final CredentialsProvider credentials = new BasicCredentialsProvider();
+		final AuthCache authCache = new BasicAuthCache();
+
+		Device (HttpHost host, String username, String password) {
+			this.password = password;
+			credentials.setCredentials(new AuthScope(host), new UsernamePasswordCredentials(username, password));
+			authCache.put(host, new BasicScheme());
+		}
+	}
+
+	/**
+	 * Up to 200 connections, 2 per device, closed after 30 seconds idle. It trusts any certificate.
+	 */
+	public PooledHttpClient () {
+		this(200, 2, 30000, ApacheHttpClient.generousSSLContext(), false);
+	}
+
+	/**
+	 * @param maxTotal int, the maximum number of connections
+	 * @param maxPerRoute int, the maximum number of connections to a device
+	 * @param idleMillis long, how long an unused connection is kept open
+	 * @param sslContext SSLContext, created once for all the connections
+	 * @param verifyHostname boolean, false to accept a certificate of any name
+	 */
+	public PooledHttpClient (int maxTotal, int maxPerRoute, long idleMillis, SSLContext sslContext,
+			boolean verifyHostname) {
+		SSLConnectionSocketFactory sslSocketFactory = verifyHostname
+				? new SSLConnectionSocketFactory(sslContext)
+				: new SSLConnectionSocketFactory(sslContext, NoopHostnameVerifier.INSTANCE);
+		Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory>create()
+				.register("http", PlainConnectionSocketFactory.getSocketFactory())
+				.register("https", sslSocketFactory)
+				.build();
+		connectionManager = new PoolingHttpClientConnectionManager(registry);
+		connectionManager.setMaxTotal(maxTotal);
+		connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+		// check a connection that was idle for a while before it is reused: the device may have closed it
+		connectionManager.setValidateAfterInactivity(2000);
+		RequestConfig requestConfig = RequestConfig.custom()
+				.setConnectTimeout(10000)
+				.setConnectionRequestTimeout(60000)
+				.setSocketTimeout(60000)
+				.build();
+		httpClient = HttpClients.custom()
+				.setConnectionManager(connectionManager)
+				.setDefaultRequestConfig(requestConfig)
+				.evictExpiredConnections()
+				.evictIdleConnections(idleMillis, TimeUnit.MILLISECONDS)
+				.build();
+	}
+
+	/**
+	 * @return PooledHttpClient, the one shared by the process, created on first use
+	 */
+	public static synchronized PooledHttpClient shared () {
+		if (shared == null) {
+			shared = new PooledHttpClient();
+		}
+		return shared;
+	}
+
+	/**
+	 * GET the page with basic authentication.
+	 * @param url String
+	 * @param username String
+	 * @param password String
+	 * @return String, the body
+	 * @throws IOException, ClientProtocolException if the status is not 2xx
+	 */
+	public String get (String url, String username, String password) throws IOException {
+		return get(url, username, password, entity -> EntityUtils.toString(entity));
+	}
+
+	/**
+	 * GET the page with basic authentication, and read the body as it comes, e.g) to parse it.
+	 * @param url String
+	 * @param username String
+	 * @param password String
+	 * @param reader EntityReader<T>
+	 * @return T, what the reader gives
+	 * @throws IOException, ClientProtocolException if the status is not 2xx
+	 */
+	public <T> T get (String url, String username, String password, EntityReader<T> reader) throws IOException {
+		HttpGet request = new HttpGet(url);
+		HttpClientContext context = HttpClientContext.create();
+		if (username != null) {
+			Device device = device(URIUtils.extractHost(request.getURI()), username, password);
+			context.setCredentialsProvider(device.credentials);
+			context.setAuthCache(device.authCache);
+		}
+		ResponseHandler<T> handler = response -> {
+			HttpEntity entity = response.getEntity();
+			int status = response.getStatusLine().getStatusCode();
+			try {
+				if (status < 200 || status >= 300) {
+					throw new ClientProtocolException("Unexpected response status: " + status);
+				}
+				return entity == null ? null : reader.read(entity);
+			} finally {
+				EntityUtils.consume(entity);
+			}
+		};
+		Object span = Events.beginFetch();
+		long start = System.nanoTime();
+		try {
+			T result = httpClient.execute(request, handler, context);
+			Events.endFetch(span, url, result instanceof String ? (String) result : null, null);
+			return result;
+		} catch (IOException e) {
+			GET_ERRORS.increment();
+			Events.endFetch(span, url, null, e);
+			throw e;
+		} finally {
+			GET.recordSince(start);
+		}
+	}
+
+	private Device device (HttpHost host, String username, String password) {
+		String key = host.toURI() + " " + username;
+		return devices.compute(key, (k, device) ->
+			device != null && device.password.equals(password) ? device : new Device(host, username, password));
+	}
+
+	/**
+	 * @return PoolStats, the connections leased and available
+	 */
+	public PoolStats getStats () {
+		return connectionManager.getTotalStats();
+	}
+
+	/**
+	 * Close all the connections. shared() can not be closed.
+	 */
+	@Override
+	public void close () throws IOException {
+		synchronized (PooledHttpClient.class) {
+			if (this == shared) {
+				throw new IllegalStateException("The shared client can not be closed");
+			}
+		}
+		httpClient.close();
+	}
+}
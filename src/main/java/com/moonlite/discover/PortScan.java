@@ -0,0 +1,404 @@
+package com.moonlite.discover;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ *
+ * @author Dahai Li
+ *
+ * PortScan finds the open TCP ports of hosts by connect probes, like "nmap -sT -F", but in-process:
+ * it needs neither root nor nmap.
+ *   - All the probes run on one thread with a Selector, up to maxInFlight at a time.
+ *   - Each host has its own window of probes in flight. The window grows by one with each answer
+ *     (connected or refused), up to MAX_WINDOW, and halves with each probe that times out, so that a
+ *     slow or filtering host is not flooded, while a responsive one is scanned quickly.
+ *   - A probe that times out is sent again, up to retries times, since a lost SYN looks the same as
+ *     a filtered port.
+ *   - The ports are probed the likeliest open first, in the order of TOP_PORTS, as nmap does. A host
+ *     that has not answered any of its first LIKELY_PORTS ports, retries included, is taken as down,
+ *     and the rest of its ports are skipped: a host behind a firewall that drops everything but 22,
+ *     80 or 443 is still found. Until it answers, its window does not shrink below INITIAL_WINDOW.
+ *   - A socket that cannot be opened, e.g) when the process is out of file descriptors, says nothing
+ *     of the host: maxInFlight is lowered to half of the probes that fit, and the probes over it are
+ *     closed, and started again later.
+ * The result has a ScannedHost for each host that answered, with its open ports; no name or OS.
+ */
+public class PortScan implements Discover {
+	/***
+	 * The 100 ports of "nmap -F", from the scaninfo of its xml output.
+	 */
+	public static final String FAST_PORTS = "7,9,13,21-23,25-26,37,53,79-81,88,106,110-111,113,119,135,139,"
+			+ "143-144,179,199,389,427,443-445,465,513-515,543-544,548,554,587,631,646,873,990,993,995,"
+			+ "1025-1029,1110,1433,1720,1723,1755,1900,2000-2001,2049,2121,2717,3000,3128,3306,3389,3986,"
+			+ "4899,5000,5009,5051,5060,5101,5190,5357,5432,5631,5666,5800,5900,6000-6001,6646,7070,8000,"
+			+ "8008-8009,8080-8081,8443,8888,9100,9999-10000,32768,49152-49157";
+	/***
+	 * The ports of FAST_PORTS, the likeliest open first, by their frequency in nmap-services.
+	 */
+	static final String TOP_PORTS = "80,23,443,21,22,25,3389,110,445,139,143,53,135,3306,8080,1723,111,995,"
+			+ "993,5900,1025,587,8888,199,1720,465,548,113,81,6001,10000,514,5060,179,1026,2000,8443,8000,"
+			+ "32768,554,26,1433,49152,2001,515,8008,49154,1027,5666,646,5000,5631,631,49153,8081,2049,88,79,"
+			+ "5800,106,2121,1110,49155,6000,513,990,5357,427,49156,543,544,5101,144,7,389,8009,3128,444,9999,"
+			+ "5009,7070,5190,3000,5432,1900,3986,13,1029,9,5051,6646,49157,1028,873,1755,2717,4899,9100,119,37";
+	static final int INITIAL_WINDOW = 4;
+	static final int LIKELY_PORTS = 8;
+	static final int MAX_WINDOW = 32;
+
+	private final int[] ports;
+	private final long timeoutMillis;
+	private final int retries;
+	private final int maxInFlight;
+
+	/**
+	 * Scan FAST_PORTS with a deadline of 1 second and one retransmit, TcpSweep.defaultMaxInFlight()
+	 * probes at a time.
+	 */
+	public PortScan () {
+		this(parsePorts(FAST_PORTS), 1000, 1, TcpSweep.defaultMaxInFlight());
+	}
+
+	/**
+	 * @param ports int[], the ports to scan
+	 * @param timeoutMillis long, the deadline of each probe
+	 * @param retries int, how many times a probe that times out is sent again
+	 * @param maxInFlight int, the maximum number of probes in flight, each of which holds a socket
+	 */
+	public PortScan (int[] ports, long timeoutMillis, int retries, int maxInFlight) {
+		if (ports.length == 0 || timeoutMillis <= 0 || retries < 0 || maxInFlight < 1) {
+			throw new IllegalArgumentException("Invalid ports " + Arrays.toString(ports) + ", timeout "
+					+ timeoutMillis + ", retries " + retries + " or maxInFlight " + maxInFlight);
+		}
+		this.ports = byLikelihood(ports);
+		this.timeoutMillis = timeoutMillis;
+		this.retries = retries;
+		this.maxInFlight = maxInFlight;
+	}
+
+	/**
+	 * @param ports String, in the format of nmap -p, e.g) "21-23,80"
+	 * @return int[] of the ports
+	 */
+	public static int[] parsePorts (String ports) {
+		List<Integer> result = new ArrayList<>();
+		for (String range: ports.split(",")) {
+			String[] ends = range.trim().split("-");
+			int first = Integer.parseInt(ends[0]);
+			int last = ends.length > 1 ? Integer.parseInt(ends[1]) : first;
+			if (ends.length > 2 || first < 1 || last > 65535 || first > last) {
+				throw new IllegalArgumentException("Invalid port range: " + range);
+			}
+			for (int port = first; port <= last; port++) {
+				result.add(port);
+			}
+		}
+		int[] r = new int[result.size()];
+		for (int i = 0; i < r.length; i++) {
+			r[i] = result.get(i);
+		}
+		return r;
+	}
+
+	/**
+	 * @param ports int[]
+	 * @return a copy of ports, those in TOP_PORTS first in its order, then the others in their own order
+	 */
+	static int[] byLikelihood (int[] ports) {
+		int[] top = parsePorts(TOP_PORTS);
+		int[] rank = new int[65536];
+		Arrays.fill(rank, top.length);
+		for (int i = 0; i < top.length; i++) {
+			rank[top[i]] = i;
+		}
+		return Arrays.stream(ports).boxed().sorted(Comparator.comparingInt(port -> rank[port]))
+				.mapToInt(Integer::intValue).toArray();
+	}
+
+	/**
+	 * @param target String, networks or hosts separated by spaces, e.g) "10.28.1.0/24 www.microsoft.com"
+	 * @return Host[] of ScannedHost's in address order, or null if a host name cannot be resolved or
+	 *         the scan fails.
+	 */
+	@Override
+	public Host[] discover (Object target) {
+		try {
+			return scan((String) target);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * @param target String, see discover
+	 * @return ScannedHost[] in address order
+	 * @throws IOException if a host name cannot be resolved, the selector cannot be opened, or a socket
+	 *         cannot be opened with no probe in flight
+	 */
+	public ScannedHost[] scan (String target) throws IOException {
+		Iterator<InetAddress> addresses = TcpSweep.addresses(target);
+		List<ScannedHost> result = new ArrayList<>();
+		List<Target> active = new ArrayList<>();
+		// enough hosts to fill maxInFlight with their initial windows
+		int maxHosts = Math.max(1, maxInFlight / INITIAL_WINDOW);
+		// probes in the order they were started, which is also the order of their deadlines
+		ArrayDeque<Probe> inFlight = new ArrayDeque<>();
+		int open = 0;
+		int limit = maxInFlight;
+		// probes to start again, before the next ones, after a local error
+		ArrayDeque<Probe> retry = new ArrayDeque<>();
+		try (Selector selector = Selector.open()) {
+			while (addresses.hasNext() || !active.isEmpty()) {
+				while (addresses.hasNext() && active.size() < maxHosts) {
+					active.add(new Target(addresses.next()));
+				}
+				for (Target t: active) {
+					while (open < limit && (!retry.isEmpty() || t.canStart())) {
+						Probe probe = !retry.isEmpty() ? retry.poll() : t.next();
+						try {
+							if (probe.start(selector, System.nanoTime())) {
+								inFlight.add(probe);
+								open++;
+							}
+						} catch (IOException e) {
+							// a local error, e.g) out of file descriptors, says nothing of the host
+							if (open == 0) {
+								throw e;
+							}
+							// take back the newest half of the probes in flight, to leave the rest of the
+							// process some descriptors too, and start them again later. Each is still
+							// in flight for its target.
+							retry.addFirst(probe);
+							limit = Math.max(1, open / 2);
+							while (open > limit) {
+								Probe last = inFlight.pollLast();
+								if (!last.closed()) {
+									last.close();
+									open--;
+									retry.addFirst(last);
+								}
+							}
+						}
+					}
+				}
+
+				// drop the finished probes, and time out the ones past their deadline
+				long now = System.nanoTime();
+				while (!inFlight.isEmpty() && (inFlight.peek().closed() || inFlight.peek().deadline - now <= 0)) {
+					Probe probe = inFlight.poll();
+					if (!probe.closed()) {
+						probe.close();
+						open--;
+						probe.target.timedOut(probe);
+					}
+				}
+				Probe first = inFlight.peek();
+				if (first != null) {
+					selector.select(Math.max(1, (first.deadline - now) / 1000000));
+					for (SelectionKey key: selector.selectedKeys()) {
+						((Probe) key.attachment()).finish();
+						open--;
+					}
+					selector.selectedKeys().clear();
+				}
+
+				for (Iterator<Target> i = active.iterator(); i.hasNext();) {
+					Target t = i.next();
+					if (t.isDone()) {
+						i.remove();
+						if (t.answered) {
+							result.add(t.toHost());
+						}
+					}
+				}
+			}
+		}
+		result.sort(ScanDiff.BY_ADDRESS);
+		return result.toArray(new ScannedHost[result.size()]);
+	}
+
+	/***
+	 * A host being scanned.
+	 */
+	private class Target {
+		final InetAddress address;
+		final TreeSet<Integer> openPorts = new TreeSet<>();
+		final ArrayDeque<Probe> resend = new ArrayDeque<>();
+		int nextPort = 0;
+		int inFlight = 0;
+		double window = INITIAL_WINDOW;
+		boolean answered = false;
+		boolean down = false;
+		int lost = 0;
+
+		Target (InetAddress address) {
+			this.address = address;
+		}
+
+		boolean canStart () {
+			return !down && inFlight < (int) window && (!resend.isEmpty() || nextPort < ports.length);
+		}
+
+		Probe next () {
+			inFlight++;
+			Probe probe = resend.poll();
+			return probe != null ? new Probe(this, probe.port, probe.attempt + 1) : new Probe(this, ports[nextPort++], 0);
+		}
+
+		boolean isDone () {
+			return inFlight == 0 && (down || (resend.isEmpty() && nextPort == ports.length));
+		}
+
+		void answered (Probe probe, boolean isOpen) {
+			inFlight--;
+			answered = true;
+			if (isOpen) {
+				openPorts.add(probe.port);
+			}
+			window = Math.min(window + 1, MAX_WINDOW);
+		}
+
+		void timedOut (Probe probe) {
+			inFlight--;
+			// a host that has not answered yet may well be down, or drop the port: that is no sign of
+			// congestion
+			window = Math.max(answered ? 1 : INITIAL_WINDOW, window / 2);
+			if (probe.attempt < retries) {
+				resend.add(probe);
+			} else if (!answered && ++lost >= LIKELY_PORTS) {
+				down = true;
+			}
+		}
+
+		void unreachable () {
+			inFlight--;
+			if (!answered) {
+				down = true;
+			}
+		}
+
+		ScannedHost toHost () {
+			int[] ports = new int[openPorts.size()];
+			int i = 0;
+			for (int port: openPorts) {
+				ports[i++] = port;
+			}
+			return new ScannedHost(address.getHostAddress(), null, null, ports);
+		}
+	}
+
+	/***
+	 * A connect probe to one port of a target.
+	 */
+	private class Probe {
+		final Target target;
+		final int port;
+		final int attempt;
+		SocketChannel channel = null;
+		long deadline;
+
+		Probe (Target target, int port, int attempt) {
+			this.target = target;
+			this.port = port;
+			this.attempt = attempt;
+		}
+
+		/**
+		 * @return true if the probe is in flight, false if it is already finished
+		 * @throws IOException if the socket cannot be opened or registered, e.g) out of file descriptors.
+		 *         The probe is not finished, and can be started again.
+		 */
+		boolean start (Selector selector, long now) throws IOException {
+			try {
+				channel = SocketChannel.open();
+				channel.configureBlocking(false);
+			} catch (IOException e) {
+				close();
+				throw e;
+			}
+			try {
+				if (channel.connect(new InetSocketAddress(target.address, port))) {
+					close();
+					target.answered(this, true);
+					return false;
+				}
+			} catch (ConnectException e) {
+				close();
+				target.answered(this, false);
+				return false;
+			} catch (IOException e) {
+				close();
+				target.unreachable();
+				return false;
+			}
+			try {
+				channel.register(selector, SelectionKey.OP_CONNECT, this);
+			} catch (IOException e) {
+				close();
+				throw e;
+			}
+			deadline = now + timeoutMillis * 1000000;
+			return true;
+		}
+
+		void finish () {
+			try {
+				channel.finishConnect();
+				close();
+				target.answered(this, true);
+			} catch (ConnectException e) {
+				// refused: the port is closed, but the host is there
+				close();
+				target.answered(this, false);
+			} catch (IOException e) {
+				close();
+				target.unreachable();
+			}
+		}
+
+		boolean closed () {
+			return channel == null;
+		}
+
+		void close () {
+			if (channel != null) {
+				try {
+					// also cancels the key
+					channel.close();
+				} catch (IOException e) {
+				}
+				channel = null;
+			}
+		}
+	}
+
+	/***
+	 * For test only
+	 * Example:
+	 *     java PortScan 10.28.1.0/24
+	 * @param args String[] networks or hosts
+	 */
+	public static void main (String[] args) {
+		long start = System.currentTimeMillis();
+		Host[] hosts = new PortScan().discover(String.join(" ", args));
+		if (hosts == null) {
+			System.exit(-1);
+		}
+		for (Host host: hosts) {
+			System.out.println(host.address + " " + Arrays.toString(((ScannedHost) host).getOpenPorts()));
+		}
+		System.out.println(hosts.length + " hosts in " + (System.currentTimeMillis() - start) + " ms");
+	}
+}
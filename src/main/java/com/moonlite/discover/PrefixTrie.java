@@ -0,0 +1,295 @@
+package com.moonlite.discover;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ *
+ * @author Dahai Li
+ *
+ * PrefixTrie maps IP prefixes, e.g) 10.28.0.0/16 or 2001:db8::/32, to values.
+ * It is a binary trie on the bits of the address, with the single-child paths compressed (a Patricia
+ * trie): a node is only where a prefix ends or where prefixes branch, and it skips the bits its
+ * ancestors have in common with it. So n prefixes take at most 2n nodes, rather than up to 32 per
+ * IPv4 address and 128 per IPv6 address, and put, get, longestMatch, and locating the prefix of a
+ * range take at most one step per node on the way, whatever the number of entries.
+ * IPv4 and IPv6 prefixes are kept in separate tries, and never match each other.
+ *
+ * PrefixTrie is not thread-safe.
+ * @see HostIndex
+ */
+public class PrefixTrie<V> {
+	private final Node<V> ipv4 = new Node<>(new byte[4], 0);
+	private final Node<V> ipv6 = new Node<>(new byte[16], 0);
+	private int size = 0;
+
+	/***
+	 * A prefix, with the children of those longer ones that continue with a 0 or a 1 bit.
+	 */
+	private static class Node<V> {
+		// the address of the prefix, with the host bits 0
+		final byte[] key;
+		final int length;
+		Node<V> zero;
+		Node<V> one;
+		V value;
+		boolean hasValue;
+
+		Node (byte[] key, int length) {
+			this.key = key;
+			this.length = length;
+		}
+
+		/**
+		 * @return boolean, whether prefix, of this length or longer, starts with this one
+		 */
+		boolean isPrefixOf (Prefix prefix) {
+			return length <= prefix.length && commonLength(key, prefix.address, length) == length;
+		}
+
+		Node<V> child (boolean one) {
+			return one ? this.one : zero;
+		}
+
+		void setChild (Node<V> child) {
+			if (bit(child.key, length)) {
+				one = child;
+			} else {
+				zero = child;
+			}
+		}
+	}
+
+	/**
+	 * Prefix is an address and the number of its leading bits that matter.
+	 */
+	static class Prefix {
+		final byte[] address;
+		final int length;
+
+		Prefix (byte[] address, int length) {
+			this.address = address;
+			this.length = length;
+		}
+
+		/**
+		 * @param cidr String, e.g) 10.28.0.0/16, 2001:db8::/32, or an address for a full length prefix.
+		 * @return Prefix
+		 * @throws IllegalArgumentException if cidr is not an IPv4 or IPv6 prefix
+		 */
+		static Prefix parse (String cidr) {
+			String address = cidr.trim();
+			int slash = address.indexOf('/');
+			String length = null;
+			if (slash >= 0) {
+				length = address.substring(slash + 1);
+				address = address.substring(0, slash);
+			}
+			byte[] bytes = Addresses.toBytes(address);
+			if (bytes == null) {
+				throw new IllegalArgumentException("Not an IP address: " + cidr);
+			}
+			int bits = bytes.length * 8;
+			try {
+				int n = length == null ? bits : Integer.parseInt(length);
+				if (n < 0 || n > bits) {
+					throw new IllegalArgumentException("Invalid prefix length: " + cidr);
+				}
+				return new Prefix(bytes, n);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid prefix length: " + cidr);
+			}
+		}
+
+		boolean bit (int i) {
+			return PrefixTrie.bit(address, i);
+		}
+	}
+
+	private static boolean bit (byte[] address, int i) {
+		return (address[i >>> 3] & (0x80 >>> (i & 7))) != 0;
+	}
+
+	/**
+	 * @return int, the number of leading bits a and b have in common, up to max
+	 */
+	private static int commonLength (byte[] a, byte[] b, int max) {
+		for (int i = 0; i < max; i += 8) {
+			int diff = (a[i >>> 3] ^ b[i >>> 3]) & 0xff;
+			if (diff != 0) {
+				return Math.min(max, i + Integer.numberOfLeadingZeros(diff) - 24);
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * @return Node, of the first length bits of address
+	 */
+	private static <V> Node<V> newNode (byte[] address, int length) {
+		byte[] key = new byte[address.length];
+		System.arraycopy(address, 0, key, 0, (length + 7) >>> 3);
+		if ((length & 7) != 0) {
+			key[length >>> 3] &= 0xff00 >>> (length & 7);
+		}
+		return new Node<>(key, length);
+	}
+
+	/**
+	 * @param cidr String, e.g) 10.28.0.0/16. The host bits are ignored.
+	 * @param value V
+	 * @return V, the previous value of the prefix, or null
+	 */
+	public V put (String cidr, V value) {
+		Prefix prefix = Prefix.parse(cidr);
+		// node is always a prefix of prefix
+		Node<V> node = root(prefix);
+		while (node.length < prefix.length) {
+			Node<V> child = node.child(prefix.bit(node.length));
+			if (child == null) {
+				child = newNode(prefix.address, prefix.length);
+				node.setChild(child);
+			} else if (!child.isPrefixOf(prefix)) {
+				// prefix leaves the path to child: a node where they part, or where prefix ends
+				int common = commonLength(child.key, prefix.address, Math.min(child.length, prefix.length));
+				Node<V> fork = newNode(prefix.address, common);
+				fork.setChild(child);
+				node.setChild(fork);
+				child = fork;
+			}
+			node = child;
+		}
+		V previous = node.value;
+		if (!node.hasValue) {
+			size++;
+		}
+		node.value = value;
+		node.hasValue = true;
+		return previous;
+	}
+
+	/**
+	 * @param cidr String
+	 * @return V, the value of exactly this prefix, or null
+	 */
+	public V get (String cidr) {
+		Prefix prefix = Prefix.parse(cidr);
+		Node<V> node = find(prefix);
+		return node == null || node.length != prefix.length ? null : node.value;
+	}
+
+	/**
+	 * @param cidr String
+	 * @return true if exactly this prefix has a value
+	 */
+	public boolean containsKey (String cidr) {
+		Prefix prefix = Prefix.parse(cidr);
+		Node<V> node = find(prefix);
+		return node != null && node.length == prefix.length && node.hasValue;
+	}
+
+	/**
+	 * Longest prefix match, as in a routing table.
+	 * @param address String, e.g) 10.28.29.96
+	 * @return V, the value of the longest prefix that contains the address, or null
+	 */
+	public V longestMatch (String address) {
+		Prefix prefix = Prefix.parse(address);
+		Node<V> node = root(prefix);
+		V result = node.hasValue ? node.value : null;
+		while (node.length < prefix.length) {
+			node = node.child(prefix.bit(node.length));
+			if (node == null || !node.isPrefixOf(prefix)) {
+				break;
+			}
+			if (node.hasValue) {
+				result = node.value;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Pass the values of all the prefixes within cidr, including cidr itself, to the consumer
+	 * in address order; a shorter prefix comes before the longer ones it contains.
+	 * @param cidr String, e.g) 10.28.0.0/16
+	 * @param consumer Consumer<V>
+	 */
+	public void forEachIn (String cidr, Consumer<V> consumer) {
+		Node<V> node = find(Prefix.parse(cidr));
+		if (node != null) {
+			visit(node, consumer);
+		}
+	}
+
+	/**
+	 * @param cidr String, e.g) 10.28.0.0/16
+	 * @return List<V> of the values of all the prefixes within cidr, in address order
+	 */
+	public List<V> valuesIn (String cidr) {
+		List<V> result = new ArrayList<>();
+		forEachIn(cidr, result::add);
+		return result;
+	}
+
+	/**
+	 * @param cidr String
+	 * @return true if any prefix within cidr has a value
+	 */
+	public boolean containsAnyIn (String cidr) {
+		Node<V> node = find(Prefix.parse(cidr));
+		return node != null && (node.hasValue || node.zero != null || node.one != null);
+	}
+
+	/**
+	 * @return int, the number of prefixes with a value
+	 */
+	public int size () {
+		return size;
+	}
+
+	private Node<V> root (Prefix prefix) {
+		return prefix.address.length == 4 ? ipv4 : ipv6;
+	}
+
+	/**
+	 * @return Node, of prefix, or else the shortest prefix within it, whose sub-trie holds all those
+	 *         within prefix; null if there is none
+	 */
+	private Node<V> find (Prefix prefix) {
+		Node<V> node = root(prefix);
+		while (node.length < prefix.length) {
+			node = node.child(prefix.bit(node.length));
+			if (node == null) {
+				return null;
+			}
+			int length = Math.min(node.length, prefix.length);
+			if (commonLength(node.key, prefix.address, length) < length) {
+				return null;
+			}
+		}
+		return node;
+	}
+
+	/**
+	 * Visit the sub-trie in address order. It uses an explicit stack, as an IPv6 trie can be 128 levels
+	 * deep.
+	 */
+	private static <V> void visit (Node<V> root, Consumer<V> consumer) {
+		List<Node<V>> stack = new ArrayList<>();
+		stack.add(root);
+		while (!stack.isEmpty()) {
+			Node<V> node = stack.remove(stack.size() - 1);
+			if (node.hasValue) {
+				consumer.accept(node.value);
+			}
+			if (node.one != null) {
+				stack.add(node.one);
+			}
+			if (node.zero != null) {
+				stack.add(node.zero);
+			}
+		}
+	}
+}
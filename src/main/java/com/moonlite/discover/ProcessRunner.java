@@ -0,0 +1,496 @@
+package com.moonlite.discover;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/***
+ *
+ * @author Dahai Li
+ *
+ * ProcessRunner runs an external command, like Shell, but never deadlocks on its output:
+ * stdout and stderr are read while the command runs, each on its own thread, instead of after
+ * it exits. Shell.run waits first, so a command that writes more than the pipe holds (64KB on
+ * Linux), e.g) nmap, blocks forever.
+ *   - The output goes to OutputStream's, i.e) as bytes: a Buffer, which keeps at most a given number
+ *     of bytes, lines(), which calls back for each line, or any other stream, e.g) System.out.
+ *   - A command that runs longer than the timeout is killed, with the processes it started.
+ *
+ * @see Shell
+ */
+public class ProcessRunner {
+	/***
+	 * Threads that copy the output of the processes, shared by all the runners.
+	 */
+	private static final ExecutorService pumps = Executors.newCachedThreadPool(r -> {
+		Thread t = new Thread(r, "process-output");
+		t.setDaemon(true);
+		return t;
+	});
+
+	private final long timeoutMillis;
+	private final int maxBufferedBytes;
+
+	/**
+	 * No timeout, and up to 1MB of each output kept by run(command).
+	 */
+	public ProcessRunner () {
+		this(0, 1 << 20);
+	}
+
+	/**
+	 * @param timeoutMillis long, 0 for no timeout
+	 * @param maxBufferedBytes int, the number of bytes of each output kept by run(command)
+	 */
+	public ProcessRunner (long timeoutMillis, int maxBufferedBytes) {
+		this.timeoutMillis = timeoutMillis;
+		this.maxBufferedBytes = maxBufferedBytes;
+	}
+
+	/***
+	 *
+	 * Result of running a command.
+	 *
+	 */
+	public static class Result {
+		private final int exitCode;
+		private final boolean timedOut;
+		private final Buffer stdout;
+		private final Buffer stderr;
+
+		Result (int exitCode, boolean timedOut, Buffer stdout, Buffer stderr) {
+			this.exitCode = exitCode;
+			this.timedOut = timedOut;
+			this.stdout = stdout;
+			this.stderr = stderr;
+		}
+
+		public int getExitCode () {
+			return exitCode;
+		}
+
+		/**
+		 * @return true if the command was killed at the timeout
+		 */
+		public boolean isTimedOut () {
+			return timedOut;
+		}
+
+		/**
+		 * @return Buffer of stdout, or null if it was given to another OutputStream
+		 */
+		public Buffer getStdOut () {
+			return stdout;
+		}
+
+		/**
+		 * @return Buffer of stderr, or null if it was given to another OutputStream
+		 */
+		public Buffer getStdErr () {
+			return stderr;
+		}
+	}
+
+	/***
+	 *
+	 * Buffer keeps the first max bytes written to it, and counts the rest.
+	 *
+	 */
+	public static class Buffer extends OutputStream {
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		private final int max;
+		private long size = 0;
+
+		public Buffer (int max) {
+			this.max = max;
+		}
+
+		@Override
+		public synchronized void write (int b) {
+			write(new byte[] {(byte) b}, 0, 1);
+		}
+
+		@Override
+		public synchronized void write (byte[] b, int off, int len) {
+			int n = (int) Math.max(0, Math.min(len, max - size));
+			bytes.write(b, off, n);
+			size += len;
+		}
+
+		public synchronized byte[] toByteArray () {
+			return bytes.toByteArray();
+		}
+
+		/**
+		 * @return true if more than max bytes were written
+		 */
+		public synchronized boolean isTruncated () {
+			return size > max;
+		}
+
+		/**
+		 * @return String, the bytes kept, decoded as UTF-8
+		 */
+		@Override
+		public synchronized String toString () {
+			return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+		}
+	}
+
+	/***
+	 * Calls back for each line, without its line terminator. The bytes are decoded as UTF-8.
+	 */
+	private static class Lines extends OutputStream {
+		private final Consumer<String> callback;
+		private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+		Lines (Consumer<String> callback) {
+			this.callback = callback;
+		}
+
+		@Override
+		public void write (int b) {
+			if (b == '\n') {
+				emit();
+			} else {
+				line.write(b);
+			}
+		}
+
+		@Override
+		public void write (byte[] b, int off, int len) {
+			int start = off;
+			for (int i = off; i < off + len; i++) {
+				if (b[i] == '\n') {
+					line.write(b, start, i - start);
+					emit();
+					start = i + 1;
+				}
+			}
+			line.write(b, start, off + len - start);
+		}
+
+		/**
+		 * The last line, if it has no terminator.
+		 */
+		void end () {
+			if (line.size() > 0) {
+				emit();
+			}
+		}
+
+		private void emit () {
+			int n = line.size();
+			byte[] b = line.toByteArray();
+			if (n > 0 && b[n - 1] == '\r') {
+				n--;
+			}
+			callback.accept(new String(b, 0, n, StandardCharsets.UTF_8));
+			line.reset();
+		}
+	}
+
+	/**
+	 * @param callback Consumer<String>, called with each line of the output, on the thread reading it
+	 * @return OutputStream to pass to run
+	 */
+	public static OutputStream lines (Consumer<String> callback) {
+		return new Lines(callback);
+	}
+
+	/**
+	 * Run the command, and keep up to maxBufferedBytes of its stdout and stderr.
+	 * @param command String[]
+	 * @return Result
+	 * @throws IOException if the command cannot be started
+	 * @throws InterruptedException
+	 */
+	public Result run (String... command) throws IOException, InterruptedException {
+		return run(command, null, null);
+	}
+
+	/**
+	 * Run the command, and copy its output as it comes.
+	 * @param command String[]
+	 * @param stdout OutputStream, or null to keep up to maxBufferedBytes in the Result. It is flushed,
+	 *        but not closed.
+	 * @param stderr OutputStream, or null to keep up to maxBufferedBytes in the Result
+	 * @return Result, whose exit code is -1 if the command timed out
+	 * @throws IOException if the command cannot be started, or an OutputStream fails
+	 * @throws InterruptedException if interrupted, after the command is killed
+	 */
+	public Result run (String[] command, OutputStream stdout, OutputStream stderr) throws IOException, InterruptedException {
+		Object span = Events.beginProcess();
+		Buffer outBuffer = stdout == null ? new Buffer(maxBufferedBytes) : null;
+		Buffer errBuffer = stderr == null ? new Buffer(maxBufferedBytes) : null;
+		Process process = new ProcessBuilder(command).start();
+		Future<Long> out = pump(process.getInputStream(), stdout == null ? outBuffer : stdout);
+		Future<?> err = pump(process.getErrorStream(), stderr == null ? errBuffer : stderr);
+		boolean timedOut = false;
+		try {
+			if (timeoutMillis > 0) {
+				timedOut = !process.waitFor(timeoutMillis, TimeUnit.MILLISECONDS);
+				if (timedOut) {
+					kill(process);
+				}
+			}
+			process.waitFor();
+			// the pipes close when the process and its children exit. A child that could not be
+			// killed may hold them open, so do not wait for it after a timeout.
+			long wait = timedOut ? 1000 : 0;
+			join(out, wait);
+			join(err, wait);
+		} catch (InterruptedException e) {
+			kill(process);
+			throw e;
+		}
+		int exitCode = timedOut ? -1 : process.exitValue();
+		Events.endProcess(span, command, exitCode, out.isDone() && !out.isCancelled() ? getQuietly(out) : -1);
+		return new Result(exitCode, timedOut, outBuffer, errBuffer);
+	}
+
+	/***
+	 *
+	 * Running is a command started by start, whose stdout is read by the caller, e.g) a parser.
+	 * Its stderr is read in the background into a Buffer. close kills it if it is still running.
+	 *
+	 */
+	public class Running implements AutoCloseable {
+		private final Process process;
+		private final String[] command;
+		private final Object span;
+		private final InputStream stdout;
+		private final Buffer stderr = new Buffer(maxBufferedBytes);
+		private final Future<?> err;
+		private final Future<?> watchdog;
+		private volatile boolean timedOut = false;
+		private long stdoutBytes = 0;
+
+		Running (Process process, String[] command, Object span) {
+			this.process = process;
+			this.command = command;
+			this.span = span;
+			// stdout is counted for the flight recorder event only
+			this.stdout = span == null ? process.getInputStream() : new FilterInputStream(process.getInputStream()) {
+				@Override
+				public int read () throws IOException {
+					int b = super.read();
+					if (b != -1) {
+						stdoutBytes++;
+					}
+					return b;
+				}
+
+				@Override
+				public int read (byte[] b, int off, int len) throws IOException {
+					int n = super.read(b, off, len);
+					if (n > 0) {
+						stdoutBytes += n;
+					}
+					return n;
+				}
+			};
+			this.err = pump(process.getErrorStream(), stderr);
+			this.watchdog = timeoutMillis <= 0 ? null : pumps.submit(() -> {
+				if (!process.waitFor(timeoutMillis, TimeUnit.MILLISECONDS)) {
+					timedOut = true;
+					kill(process);
+				}
+				return null;
+			});
+		}
+
+		/**
+		 * @return InputStream of stdout
+		 */
+		public InputStream getStdOut () {
+			return stdout;
+		}
+
+		/**
+		 * Read the rest of stdout, if the caller did not, and wait for the command to exit.
+		 * @return Result, with the stderr only
+		 * @throws IOException
+		 * @throws InterruptedException
+		 */
+		public Result waitFor () throws IOException, InterruptedException {
+			byte[] buf = new byte[8192];
+			try (InputStream in = stdout) {
+				while (in.read(buf) != -1) {
+				}
+			} catch (IOException e) {
+				// killed at the timeout
+			}
+			process.waitFor();
+			join(err, timedOut ? 1000 : 0);
+			if (watchdog != null) {
+				watchdog.cancel(true);
+			}
+			int exitCode = timedOut ? -1 : process.exitValue();
+			Events.endProcess(span, command, exitCode, stdoutBytes);
+			return new Result(exitCode, timedOut, null, stderr);
+		}
+
+		/**
+		 * Kill the command if it is still running, e.g) when the caller fails to parse its output.
+		 */
+		@Override
+		public void close () {
+			if (process.isAlive()) {
+				kill(process);
+			}
+			if (watchdog != null) {
+				watchdog.cancel(true);
+			}
+		}
+	}
+
+	/**
+	 * Start the command, so that the caller reads its stdout as it comes, e.g)
+	 *     try (ProcessRunner.Running nmap = runner.start(command)) {
+	 *         parse(nmap.getStdOut());
+	 *         return nmap.waitFor().getExitCode();
+	 *     }
+	 * @param command String[]
+	 * @return Running
+	 * @throws IOException if the command cannot be started
+	 */
+	public Running start (String... command) throws IOException {
+		Object span = Events.beginProcess();
+		return new Running(new ProcessBuilder(command).start(), command, span);
+	}
+
+	/**
+	 * @param in InputStream
+	 * @param copy OutputStream, which gets a copy of every byte read from in. It is not closed.
+	 * @return InputStream, which reads in
+	 */
+	public static InputStream tee (InputStream in, OutputStream copy) {
+		return new FilterInputStream(in) {
+			@Override
+			public int read () throws IOException {
+				int b = super.read();
+				if (b != -1) {
+					copy.write(b);
+				}
+				return b;
+			}
+
+			@Override
+			public int read (byte[] b, int off, int len) throws IOException {
+				int n = super.read(b, off, len);
+				if (n > 0) {
+					copy.write(b, off, n);
+				}
+				return n;
+			}
+
+			@Override
+			public long skip (long n) throws IOException {
+				// read what is skipped, so that the copy is complete
+				byte[] buf = new byte[(int) Math.min(n, 8192)];
+				int r = read(buf, 0, buf.length);
+				return Math.max(r, 0);
+			}
+
+			@Override
+			public boolean markSupported () {
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Kill the process and all the processes it started, e.g) the children of "sh -c".
+	 * Before Java 9 there is no ProcessHandle, and only the process itself is killed.
+	 * @param process Process
+	 */
+	public static void kill (Process process) {
+		List<?> children = Collections.emptyList();
+		Method destroy = null;
+		try {
+			// Java 9+: process.descendants().forEach(ProcessHandle::destroyForcibly)
+			Method descendants = Process.class.getMethod("descendants");
+			destroy = Class.forName("java.lang.ProcessHandle").getMethod("destroyForcibly");
+			try (Stream<?> stream = (Stream<?>) descendants.invoke(process)) {
+				children = stream.collect(Collectors.toList());
+			}
+		} catch (ReflectiveOperationException | UnsupportedOperationException e) {
+			// Java 8
+		}
+		// the parent first: a shell whose child is killed first would go on to the next command
+		process.destroyForcibly();
+		for (Object child: children) {
+			try {
+				destroy.invoke(child);
+			} catch (ReflectiveOperationException e) {
+				// gone, or not ours
+			}
+		}
+	}
+
+	/**
+	 * Copy the input to the output until the end of the input, on a pump thread.
+	 */
+	static Future<Long> pump (InputStream in, OutputStream out) {
+		return pumps.submit(() -> {
+			byte[] buf = new byte[8192];
+			long total = 0;
+			try (InputStream is = in) {
+				int n;
+				while ((n = is.read(buf)) != -1) {
+					out.write(buf, 0, n);
+					total += n;
+				}
+			}
+			if (out instanceof Lines) {
+				((Lines) out).end();
+			}
+			out.flush();
+			return total;
+		});
+	}
+
+	/**
+	 * @return long, the bytes copied by a pump that is done, -1 if it failed
+	 */
+	private static long getQuietly (Future<Long> pump) {
+		try {
+			return pump.get();
+		} catch (ExecutionException | InterruptedException e) {
+			return -1;
+		}
+	}
+
+	private static void join (Future<?> pump, long timeoutMillis) throws IOException, InterruptedException {
+		try {
+			if (timeoutMillis > 0) {
+				pump.get(timeoutMillis, TimeUnit.MILLISECONDS);
+			} else {
+				pump.get();
+			}
+		} catch (TimeoutException e) {
+			// give up on the rest of the output
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+}
@@ -0,0 +1,301 @@
+package com.moonlite.discover;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *
+ * @author Dahai Li
+ *
+ * ReverseDns fills in the names of hosts by PTR lookups of their addresses, for the hosts that have
+ * none, e.g) from "nmap -n", TcpSweep or PortScan.
+ *   - The addresses of a batch are looked up concurrently, by a fixed number of threads.
+ *   - A name found is cached for positiveTtlMillis. An address with no name is cached too, for
+ *     negativeTtlMillis, so that scanning the same empty addresses again does not query the resolver
+ *     each time; such lookups are usually the slow ones, as they wait for a timeout.
+ *   - The cache holds at most maxEntries addresses. When it is full, the expired entries are dropped
+ *     first, then the least recently used ones, so a long run over large ranges stays within bounds.
+ * The resolver is pluggable, e.g) a stub in tests.
+ */
+public class ReverseDns {
+	/***
+	 *
+	 * Resolver looks up the name of an address.
+	 *
+	 */
+	public interface Resolver {
+		/**
+		 * @param address String, an IPv4 or IPv6 address
+		 * @return String, the name, or null if the address has none
+		 * @throws IOException
+		 */
+		String lookup (String address) throws IOException;
+	}
+
+	/***
+	 * The resolver of the system: InetAddress.getCanonicalHostName gives back the address when it
+	 * has no name, in its own form, e.g) "fe80:0:0:0:0:0:0:1" for "fe80::1".
+	 */
+	public static final Resolver SYSTEM = address -> {
+		InetAddress inet = InetAddress.getByName(address);
+		String name = inet.getCanonicalHostName();
+		return name.equals(inet.getHostAddress()) ? null : name;
+	};
+
+	private final Resolver resolver;
+	private final ExecutorService pool;
+	private final long positiveTtlMillis;
+	private final long negativeTtlMillis;
+	private final int maxEntries;
+	// in access order, the least recently used first; guarded by itself
+	private final LinkedHashMap<String, Entry> cache;
+	// when the next entry expires, at the earliest: no need to look for expired entries before then
+	private long nextExpiry = Long.MAX_VALUE;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/***
+	 * A cached name, null for an address with no name.
+	 */
+	private static class Entry {
+		final String name;
+		final long expires;
+
+		Entry (String name, long expires) {
+			this.name = name;
+			this.expires = expires;
+		}
+	}
+
+	/**
+	 * The system resolver, 16 threads, names cached for an hour, and addresses with no name for 5 minutes.
+	 */
+	public ReverseDns () {
+		this(SYSTEM, 16, 3600000, 300000);
+	}
+
+	/**
+	 * Cache up to 65536 addresses.
+	 * @param resolver Resolver
+	 * @param threads int, the maximum number of lookups at the same time
+	 * @param positiveTtlMillis long, how long a name is cached
+	 * @param negativeTtlMillis long, how long an address with no name is cached
+	 */
+	public ReverseDns (Resolver resolver, int threads, long positiveTtlMillis, long negativeTtlMillis) {
+		this(resolver, threads, positiveTtlMillis, negativeTtlMillis, 65536);
+	}
+
+	/**
+	 * @param resolver Resolver
+	 * @param threads int, the maximum number of lookups at the same time
+	 * @param positiveTtlMillis long, how long a name is cached
+	 * @param negativeTtlMillis long, how long an address with no name is cached
+	 * @param maxEntries int, the maximum number of addresses cached
+	 */
+	public ReverseDns (Resolver resolver, int threads, long positiveTtlMillis, long negativeTtlMillis,
+			int maxEntries) {
+		if (threads < 1 || maxEntries < 1) {
+			throw new IllegalArgumentException("Invalid threads " + threads + " or maxEntries " + maxEntries);
+		}
+		this.resolver = resolver;
+		this.positiveTtlMillis = positiveTtlMillis;
+		this.negativeTtlMillis = negativeTtlMillis;
+		this.maxEntries = maxEntries;
+		this.cache = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			// in here, Entry alone is the Entry of Map
+			@Override
+			protected boolean removeEldestEntry (Map.Entry<String, ReverseDns.Entry> eldest) {
+				return size() > ReverseDns.this.maxEntries;
+			}
+		};
+		this.pool = Executors.newFixedThreadPool(threads, r -> {
+			Thread t = new Thread(r, "reverse-dns");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	/**
+	 * @param hosts Host[]
+	 * @return Host[], the hosts in the same order, with the name looked up for those that have none.
+	 *         A ScannedHost keeps its ports.
+	 */
+	public Host[] resolve (Host[] hosts) {
+		Map<String, Future<String>> lookups = new LinkedHashMap<>();
+		for (Host host: hosts) {
+			if (isUnnamed(host) && host.address != null && !lookups.containsKey(host.address)) {
+				String address = host.address;
+				Entry entry = cached(address);
+				lookups.put(address, entry != null ? CompletableFuture.completedFuture(entry.name)
+						: pool.submit(() -> query(address)));
+			}
+		}
+		Host[] result = new Host[hosts.length];
+		for (int i = 0; i < hosts.length; i++) {
+			Host host = hosts[i];
+			Future<String> name = host.address == null ? null : lookups.get(host.address);
+			result[i] = name == null ? host : withName(host, get(name));
+		}
+		return result;
+	}
+
+	/**
+	 * @param address String
+	 * @return String, the name of the address from the cache or the resolver, or null if it has none
+	 */
+	public String lookup (String address) {
+		Entry entry = cached(address);
+		return entry != null ? entry.name : query(address);
+	}
+
+	/**
+	 * Ask the resolver, and cache the answer.
+	 */
+	private String query (String address) {
+		String name;
+		try {
+			name = resolver.lookup(address);
+		} catch (IOException e) {
+			name = null;
+		}
+		long ttl = name == null ? negativeTtlMillis : positiveTtlMillis;
+		put(address, new Entry(name, System.currentTimeMillis() + ttl));
+		return name;
+	}
+
+	/**
+	 * Cache an entry. When the cache is full, drop the expired entries before the least recently used
+	 * one that is still good. They are looked for only once one may have expired, so a cache full of good
+	 * entries is not walked on each insert.
+	 */
+	private void put (String address, Entry entry) {
+		synchronized (cache) {
+			long now = System.currentTimeMillis();
+			if (cache.size() >= maxEntries && nextExpiry <= now) {
+				nextExpiry = Long.MAX_VALUE;
+				for (Iterator<Entry> i = cache.values().iterator(); i.hasNext();) {
+					long expires = i.next().expires;
+					if (expires <= now) {
+						i.remove();
+					} else {
+						nextExpiry = Math.min(nextExpiry, expires);
+					}
+				}
+			}
+			cache.put(address, entry);
+			nextExpiry = Math.min(nextExpiry, entry.expires);
+		}
+	}
+
+	/**
+	 * @return int, the number of addresses cached, expired or not
+	 */
+	int size () {
+		synchronized (cache) {
+			return cache.size();
+		}
+	}
+
+	/**
+	 * @param discover Discover
+	 * @return Discover that resolves the names of the hosts discover finds
+	 */
+	public Discover stage (Discover discover) {
+		return target -> {
+			Host[] hosts = discover.discover(target);
+			return hosts == null ? null : resolve(hosts);
+		};
+	}
+
+	/**
+	 * Stop the threads. Lookups already started complete.
+	 */
+	public void shutdown () {
+		pool.shutdown();
+	}
+
+	/**
+	 * @return long, the number of lookups answered by the cache
+	 */
+	public long getHits () {
+		return hits.get();
+	}
+
+	/**
+	 * @return long, the number of lookups sent to the resolver
+	 */
+	public long getMisses () {
+		return misses.get();
+	}
+
+	private Entry cached (String address) {
+		synchronized (cache) {
+			Entry entry = cache.get(address);
+			if (entry != null && entry.expires > System.currentTimeMillis()) {
+				hits.incrementAndGet();
+				return entry;
+			}
+			if (entry != null) {
+				cache.remove(address);
+			}
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+
+	private static boolean isUnnamed (Host host) {
+		return host.name == null || host.name.isEmpty();
+	}
+
+	private static Host withName (Host host, String name) {
+		if (name == null) {
+			return host;
+		}
+		if (host instanceof ScannedHost) {
+			return new ScannedHost(host.address, name, host.os, ((ScannedHost) host).getOpenPorts());
+		}
+		return new Host(host.address, name, host.os);
+	}
+
+	private static String get (Future<String> future) {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			return null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+	}
+
+	/***
+	 * For test only
+	 * Example:
+	 *     java ReverseDns 8.8.8.8 10.28.1.1
+	 * @param args String[] addresses
+	 */
+	public static void main (String[] args) {
+		List<Host> hosts = new ArrayList<>();
+		for (String address: args) {
+			hosts.add(new Host(address, null, null));
+		}
+		ReverseDns dns = new ReverseDns();
+		for (Host host: dns.resolve(hosts.toArray(new Host[hosts.size()]))) {
+			System.out.println(host.address + " " + host.name);
+		}
+		dns.shutdown();
+	}
+}
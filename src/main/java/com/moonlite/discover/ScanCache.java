@@ -0,0 +1,288 @@
+package com.moonlite.discover;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ *
+ * @author Dahai Li
+ *
+ * ScanCache keeps the results of a Discover for a while, so that scanning the same target with the
+ * same nmap arguments again within the TTL returns the previous result instead of running nmap.
+ * The least recently used results are evicted when there are more than maxEntries.
+ * If a directory is given, each result is also saved in it, and the cache is reloaded from it when
+ * a ScanCache is created, e.g) after the JVM restarts.
+ *
+ * Failed scans (a null result) are not cached.
+ */
+public class ScanCache implements Discover {
+	private static final int MAGIC = 0x4e4d4331; // "NMC1"
+	private static final String SUFFIX = ".scan";
+	// the smallest host in a file: three null strings
+	private static final int MIN_HOST_BYTES = 3;
+
+	private final Discover discover;
+	private final String arguments;
+	private final long ttlMillis;
+	private final int maxEntries;
+	private final File directory;
+	private final LinkedHashMap<String, Entry> entries;
+
+	private static class Entry {
+		final String key;
+		final long time;
+		final Host[] hosts;
+
+		Entry (String key, long time, Host[] hosts) {
+			this.key = key;
+			this.time = time;
+			this.hosts = hosts;
+		}
+	}
+
+	/**
+	 * Cache the results of NMapStAX in memory.
+	 * @param ttlMillis long, how long a result is used
+	 * @param maxEntries int, the maximum number of results kept
+	 */
+	public ScanCache (long ttlMillis, int maxEntries) {
+		this(new NMapStAX(), NMapCommand.DEFAULT_OPTIONS, ttlMillis, maxEntries, null);
+	}
+
+	/**
+	 * @param discover Discover, used on a cache miss
+	 * @param arguments String[], the nmap arguments the discover runs with, e.g) {"-F", "-O"}.
+	 *        They are part of the key, so that results of different kinds of scans are not mixed.
+	 * @param ttlMillis long, how long a result is used
+	 * @param maxEntries int, the maximum number of results kept
+	 * @param directory File, where the results are saved, or null to keep them only in memory
+	 * @throws IllegalArgumentException if directory cannot be created
+	 */
+	public ScanCache (Discover discover, String[] arguments, long ttlMillis, int maxEntries, File directory) {
+		if (maxEntries < 1) {
+			throw new IllegalArgumentException("Invalid maxEntries: " + maxEntries);
+		}
+		if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+			throw new IllegalArgumentException("Cannot create directory " + directory);
+		}
+		this.discover = discover;
+		this.arguments = String.join(" ", arguments);
+		this.ttlMillis = ttlMillis;
+		this.maxEntries = maxEntries;
+		this.directory = directory;
+		// access order, so that the eldest entry is the least recently used.
+		this.entries = new LinkedHashMap<>(16, 0.75f, true);
+		load();
+	}
+
+	@Override
+	public Host[] discover (Object target) {
+		return discover(target, false);
+	}
+
+	/**
+	 * @param target String, the network to discover
+	 * @param refresh boolean, true to scan the target even if there is a cached result
+	 * @return Host[], or null if the scan fails
+	 */
+	public Host[] discover (Object target, boolean refresh) {
+		String key = key((String) target);
+		if (!refresh) {
+			Host[] hosts = get(key);
+			if (hosts != null) {
+				return hosts;
+			}
+		}
+		Host[] hosts = discover.discover(target);
+		if (hosts != null) {
+			put(new Entry(key, System.currentTimeMillis(), hosts.clone()));
+		}
+		return hosts;
+	}
+
+	/**
+	 * Remove all the results, from the directory as well.
+	 */
+	public synchronized void clear () {
+		for (Iterator<Entry> i = entries.values().iterator(); i.hasNext(); ) {
+			delete(i.next());
+			i.remove();
+		}
+	}
+
+	public synchronized int size () {
+		return entries.size();
+	}
+
+	/**
+	 * The key is the target, with its networks in canonical form and in order, and the arguments, e.g)
+	 * "10.28.0.5/16  Host.Example.com" and "host.example.com 10.28.0.0/16" have the same key.
+	 */
+	String key (String target) {
+		String[] networks = target.trim().split("\\s+");
+		for (int i = 0; i < networks.length; i++) {
+			Cidr cidr = Cidr.parse(networks[i]);
+			networks[i] = cidr == null ? networks[i].toLowerCase(Locale.ROOT) : cidr.toString();
+		}
+		Arrays.sort(networks);
+		return String.join(" ", networks) + "|" + arguments;
+	}
+
+	private synchronized Host[] get (String key) {
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			return null;
+		}
+		if (isExpired(entry)) {
+			entries.remove(key);
+			delete(entry);
+			return null;
+		}
+		return entry.hosts.clone();
+	}
+
+	private synchronized void put (Entry entry) {
+		entries.put(entry.key, entry);
+		save(entry);
+		evict();
+	}
+
+	private void evict () {
+		Iterator<Entry> i = entries.values().iterator();
+		while (entries.size() > maxEntries && i.hasNext()) {
+			delete(i.next());
+			i.remove();
+		}
+	}
+
+	private boolean isExpired (Entry entry) {
+		return System.currentTimeMillis() - entry.time > ttlMillis;
+	}
+
+	/**
+	 * Reload the results saved in the directory, the oldest first, dropping the expired ones.
+	 */
+	private void load () {
+		if (directory == null) {
+			return;
+		}
+		File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+		if (files == null) {
+			return;
+		}
+		List<Entry> loaded = new ArrayList<>();
+		for (File file: files) {
+			Entry entry = read(file);
+			if (entry == null || isExpired(entry)) {
+				file.delete();
+			} else {
+				loaded.add(entry);
+			}
+		}
+		Collections.sort(loaded, Comparator.comparingLong(e -> e.time));
+		for (Entry entry: loaded) {
+			entries.put(entry.key, entry);
+		}
+		evict();
+	}
+
+	private File file (String key) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+			StringBuilder name = new StringBuilder();
+			for (int i = 0; i < 16; i++) {
+				name.append(String.format("%02x", digest[i]));
+			}
+			return new File(directory, name.append(SUFFIX).toString());
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private void save (Entry entry) {
+		if (directory == null) {
+			return;
+		}
+		File file = file(entry.key);
+		File tmp = new File(directory, file.getName() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+			out.writeInt(MAGIC);
+			out.writeUTF(entry.key);
+			out.writeLong(entry.time);
+			out.writeInt(entry.hosts.length);
+			for (Host host: entry.hosts) {
+				writeString(out, host.address);
+				writeString(out, host.name);
+				writeString(out, host.os);
+			}
+		} catch (IOException e) {
+			// the result is still cached in memory
+			e.printStackTrace();
+			tmp.delete();
+			return;
+		}
+		if (!tmp.renameTo(file)) {
+			file.delete();
+			tmp.renameTo(file);
+		}
+	}
+
+	/**
+	 * @return the entry saved in file, or null if it is not one, or is truncated or corrupted
+	 */
+	private Entry read (File file) {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != MAGIC) {
+				return null;
+			}
+			String key = in.readUTF();
+			long time = in.readLong();
+			int count = in.readInt();
+			// a count that cannot fit in the file is not trusted with an allocation
+			if (count < 0 || count > file.length() / MIN_HOST_BYTES) {
+				return null;
+			}
+			Host[] hosts = new Host[count];
+			for (int i = 0; i < hosts.length; i++) {
+				hosts[i] = new Host(readString(in), readString(in), readString(in));
+			}
+			return file.getName().equals(file(key).getName()) ? new Entry(key, time, hosts) : null;
+		} catch (IOException | RuntimeException e) {
+			return null;
+		}
+	}
+
+	private void delete (Entry entry) {
+		if (directory != null) {
+			file(entry.key).delete();
+		}
+	}
+
+	private static void writeString (DataOutputStream out, String s) throws IOException {
+		out.writeBoolean(s != null);
+		if (s != null) {
+			out.writeUTF(s);
+		}
+	}
+
+	private static String readString (DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+}
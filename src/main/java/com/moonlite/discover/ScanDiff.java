@@ -0,0 +1,208 @@
+package com.moonlite.discover;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ *
+ * @author Dahai Li
+ *
+ * ScanDiff is the difference between two scans of a network, e.g) yesterday's and today's:
+ * the hosts that are added, removed, and changed (a different OS or hostname at the same address).
+ *
+ * Both scans are sorted by address and merged, rather than comparing every pair of hosts.
+ * rescan uses a difference to re-run nmap only against the hosts that changed.
+ */
+public class ScanDiff {
+	/***
+	 * Orders hosts by address: IPv4 addresses numerically, then IPv6 addresses, then the others as text.
+	 */
+	public static final Comparator<Host> BY_ADDRESS = (a, b) -> compareAddress(a.address, b.address);
+
+	private final List<Host> added;
+	private final List<Host> removed;
+	private final List<Change> changed;
+
+	/***
+	 *
+	 * Change is a host at the same address in both scans, with a different OS or hostname.
+	 *
+	 */
+	public static class Change {
+		public final Host before;
+		public final Host after;
+
+		Change (Host before, Host after) {
+			this.before = before;
+			this.after = after;
+		}
+
+		@Override
+		public String toString () {
+			return before.address + ": " + before.name + ", " + before.os + " -> " + after.name + ", " + after.os;
+		}
+	}
+
+	private ScanDiff (List<Host> added, List<Host> removed, List<Change> changed) {
+		this.added = Collections.unmodifiableList(added);
+		this.removed = Collections.unmodifiableList(removed);
+		this.changed = Collections.unmodifiableList(changed);
+	}
+
+	/**
+	 * Compare two scans.
+	 * @param before Host[], the earlier scan
+	 * @param after Host[], the later scan
+	 * @return ScanDiff, with each list in address order
+	 */
+	public static ScanDiff compare (Host[] before, Host[] after) {
+		Keyed[] b = sort(before);
+		Keyed[] a = sort(after);
+		List<Host> added = new ArrayList<>();
+		List<Host> removed = new ArrayList<>();
+		List<Change> changed = new ArrayList<>();
+		int i = 0;
+		int j = 0;
+		while (i < b.length || j < a.length) {
+			int c = i == b.length ? 1 : j == a.length ? -1 : b[i].compareTo(a[j]);
+			if (c < 0) {
+				removed.add(b[i++].host);
+			} else if (c > 0) {
+				added.add(a[j++].host);
+			} else {
+				Host x = b[i++].host;
+				Host y = a[j++].host;
+				if (!Objects.equals(x.name, y.name) || !Objects.equals(x.os, y.os)) {
+					changed.add(new Change(x, y));
+				}
+			}
+		}
+		return new ScanDiff(added, removed, changed);
+	}
+
+	public List<Host> getAdded () {
+		return added;
+	}
+
+	public List<Host> getRemoved () {
+		return removed;
+	}
+
+	public List<Change> getChanged () {
+		return changed;
+	}
+
+	public boolean isEmpty () {
+		return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+	}
+
+	/**
+	 * @return Set<String> of the addresses of the added, removed and changed hosts
+	 */
+	public Set<String> getAddresses () {
+		Set<String> result = new LinkedHashSet<>();
+		for (Host host: added) {
+			result.add(host.address);
+		}
+		for (Host host: removed) {
+			result.add(host.address);
+		}
+		for (Change change: changed) {
+			result.add(change.after.address);
+		}
+		return result;
+	}
+
+	/**
+	 * Bring a scan up to date by scanning only some of its hosts again, instead of the whole network.
+	 * @param discover Discover, used to scan the addresses
+	 * @param baseline Host[], the previous scan
+	 * @param addresses Collection<String> of the addresses to scan again, e.g) getAddresses() of the
+	 *        difference with a quick scan, and the hosts suspected to have changed.
+	 * @return Host[], the baseline with the hosts at the addresses replaced by the result of the scan, in
+	 *         address order. A host that is no longer found is removed. null if the scan fails.
+	 */
+	public static Host[] rescan (Discover discover, Host[] baseline, Collection<String> addresses) {
+		if (addresses.isEmpty()) {
+			Host[] result = baseline.clone();
+			Arrays.sort(result, BY_ADDRESS);
+			return result;
+		}
+		Host[] found = discover.discover(String.join(" ", addresses));
+		if (found == null) {
+			return null;
+		}
+		Set<String> scanned = new LinkedHashSet<>(addresses);
+		List<Host> result = new ArrayList<>();
+		for (Host host: baseline) {
+			if (!scanned.contains(host.address)) {
+				result.add(host);
+			}
+		}
+		result.addAll(Arrays.asList(found));
+		Host[] r = result.toArray(new Host[result.size()]);
+		Arrays.sort(r, BY_ADDRESS);
+		return r;
+	}
+
+	/**
+	 * Compare addresses, see BY_ADDRESS.
+	 */
+	public static int compareAddress (String a, String b) {
+		return new Keyed(a, null).compareTo(new Keyed(b, null));
+	}
+
+	private static Keyed[] sort (Host[] hosts) {
+		Keyed[] result = new Keyed[hosts.length];
+		for (int i = 0; i < hosts.length; i++) {
+			result[i] = new Keyed(hosts[i].address, hosts[i]);
+		}
+		Arrays.sort(result);
+		return result;
+	}
+
+	/***
+	 * A host with its address parsed once, for sorting.
+	 */
+	private static class Keyed implements Comparable<Keyed> {
+		final String address;
+		final byte[] bytes;
+		final Host host;
+
+		Keyed (String address, Host host) {
+			this.address = address == null ? "" : address;
+			this.bytes = Addresses.toBytes(address);
+			this.host = host;
+		}
+
+		@Override
+		public int compareTo (Keyed other) {
+			if (bytes == null || other.bytes == null) {
+				if (bytes != null) {
+					return -1;
+				}
+				if (other.bytes != null) {
+					return 1;
+				}
+				return address.compareTo(other.address);
+			}
+			if (bytes.length != other.bytes.length) {
+				return bytes.length - other.bytes.length;
+			}
+			for (int i = 0; i < bytes.length; i++) {
+				int c = (bytes[i] & 0xff) - (other.bytes[i] & 0xff);
+				if (c != 0) {
+					return c;
+				}
+			}
+			return 0;
+		}
+	}
+}
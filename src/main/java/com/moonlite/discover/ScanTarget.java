@@ -0,0 +1,109 @@
+package com.moonlite.discover;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ *
+ * @author Dahai Li
+ *
+ * ScanTarget is what to scan: an IPv4 network in CIDR notation, a list of hosts, or a range of IPv4
+ * addresses. The target is checked when it is created, rather than when nmap runs.
+ * A range is given to nmap as the networks that cover it.
+ */
+public final class ScanTarget {
+	public enum Kind { CIDR, HOSTS, RANGE }
+
+	private final Kind kind;
+	private final List<String> targets;
+
+	private ScanTarget (Kind kind, List<String> targets) {
+		this.kind = kind;
+		this.targets = Collections.unmodifiableList(targets);
+	}
+
+	/**
+	 * @param network String, e.g) 10.28.0.0/16
+	 * @return ScanTarget
+	 * @throws IllegalArgumentException if network is not an IPv4 network
+	 */
+	public static ScanTarget cidr (String network) {
+		Cidr cidr = Cidr.parse(network);
+		if (cidr == null) {
+			throw new IllegalArgumentException("Invalid network: " + network);
+		}
+		return new ScanTarget(Kind.CIDR, Collections.singletonList(cidr.toString()));
+	}
+
+	/**
+	 * @param hosts String[], host names or addresses, e.g) www.microsoft.com, 10.28.1.1
+	 * @return ScanTarget
+	 * @throws IllegalArgumentException if there is no host, or a host is blank or has spaces
+	 */
+	public static ScanTarget hosts (String... hosts) {
+		if (hosts.length == 0) {
+			throw new IllegalArgumentException("No host to scan");
+		}
+		List<String> targets = new ArrayList<>();
+		for (String host: hosts) {
+			String h = host == null ? "" : host.trim();
+			if (h.isEmpty() || h.split("\\s+").length > 1) {
+				throw new IllegalArgumentException("Invalid host: " + host);
+			}
+			targets.add(h);
+		}
+		return new ScanTarget(Kind.HOSTS, targets);
+	}
+
+	/**
+	 * @param first String, the first IPv4 address, e.g) 10.0.0.5
+	 * @param last String, the last IPv4 address, inclusive, e.g) 10.0.0.20
+	 * @return ScanTarget
+	 * @throws IllegalArgumentException if an address is not IPv4, or last is before first
+	 */
+	public static ScanTarget range (String first, String last) {
+		if (!Addresses.isIPv4(first) || !Addresses.isIPv4(last)) {
+			throw new IllegalArgumentException("Invalid range: " + first + " - " + last);
+		}
+		List<String> targets = new ArrayList<>();
+		for (Cidr cidr: Cidr.range(Addresses.parseIPv4(first), Addresses.parseIPv4(last))) {
+			targets.add(cidr.prefix == 32 ? Addresses.formatIPv4(cidr.network) : cidr.toString());
+		}
+		return new ScanTarget(Kind.RANGE, targets);
+	}
+
+	public Kind getKind () {
+		return kind;
+	}
+
+	/**
+	 * @return List<String>, the nmap targets
+	 */
+	public List<String> getTargets () {
+		return targets;
+	}
+
+	@Override
+	public boolean equals (Object obj) {
+		if (!(obj instanceof ScanTarget)) {
+			return false;
+		}
+		ScanTarget other = (ScanTarget) obj;
+		return kind == other.kind && targets.equals(other.targets);
+	}
+
+	@Override
+	public int hashCode () {
+		return Arrays.hashCode(new Object[] {kind, targets});
+	}
+
+	/**
+	 * @return String, the targets separated by spaces, which Discover.discover takes.
+	 */
+	@Override
+	public String toString () {
+		return String.join(" ", targets);
+	}
+}
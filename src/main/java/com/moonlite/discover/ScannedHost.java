@@ -0,0 +1,30 @@
+package com.moonlite.discover;
+
+/**
+ *
+ * @author Dahai Li
+ *
+ * ScannedHost is a Host with the TCP ports found open on it, e.g) by PortScan.
+ * The ports are not part of equals, so a ScannedHost equals the Host of the same address, name and OS.
+ */
+public class ScannedHost extends Host {
+	private final int[] openPorts;
+
+	/**
+	 * @param address String
+	 * @param name String, or null
+	 * @param os String, or null
+	 * @param openPorts int[], in ascending order
+	 */
+	public ScannedHost (String address, String name, String os, int[] openPorts) {
+		super(address, name, os);
+		this.openPorts = openPorts.clone();
+	}
+
+	/**
+	 * @return int[] of the open ports, in ascending order
+	 */
+	public int[] getOpenPorts () {
+		return openPorts.clone();
+	}
+}
@@ -0,0 +1,125 @@
+package com.moonlite.discover;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ *
+ * @author Dahai Li
+ *
+ * ShardedScan discovers a large network by splitting it into smaller networks (shards), e.g) a /16
+ * into 256 /24's, and scanning the shards concurrently, each with its own nmap process.
+ * The hosts of all the shards are merged, with duplicates removed.
+ * A failed shard does not fail the whole scan: its hosts are missing from the result, and the shard
+ * is reported by getFailedShards.
+ * @see Cidr
+ */
+public class ShardedScan implements Discover {
+	private final Discover discover;
+	private final int shardPrefix;
+	private final int parallelism;
+	private volatile List<String> failedShards = Collections.emptyList();
+
+	/**
+	 * Scan /24 shards with NMapStAX, one nmap process per core.
+	 */
+	public ShardedScan () {
+		this(new NMapStAX(), 24, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param discover Discover, used to scan each shard. It must be safe to call from several threads.
+	 * @param shardPrefix int, the prefix length of the shards, e.g) 24
+	 * @param parallelism int, the maximum number of shards scanned at the same time
+	 */
+	public ShardedScan (Discover discover, int shardPrefix, int parallelism) {
+		if (shardPrefix < 0 || shardPrefix > 32 || parallelism < 1) {
+			throw new IllegalArgumentException("Invalid shard prefix " + shardPrefix + " or parallelism " + parallelism);
+		}
+		this.discover = discover;
+		this.shardPrefix = shardPrefix;
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * @param target String, networks separated by spaces, e.g) "10.28.0.0/16 192.168.1.0/24".
+	 *        A target that is not an IPv4 network, such as www.microsoft.com/24, is scanned as one shard.
+	 * @return List<String> of the shards
+	 */
+	public List<String> shards (String target) {
+		List<String> result = new ArrayList<>();
+		for (String network: target.trim().split("\\s+")) {
+			Cidr cidr = Cidr.parse(network);
+			if (cidr == null) {
+				result.add(network);
+			} else {
+				for (Cidr shard: cidr.split(shardPrefix)) {
+					result.add(shard.toString());
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param target String, see shards
+	 * @return Host[] of all the shards that succeed, or null if all of them fail
+	 */
+	@Override
+	public Host[] discover (Object target) {
+		List<String> shards = shards((String) target);
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(parallelism, shards.size()));
+		try {
+			List<Future<Host[]>> results = new ArrayList<>();
+			for (String shard: shards) {
+				results.add(pool.submit(() -> discover.discover(shard)));
+			}
+
+			Map<String, Host> hosts = new LinkedHashMap<>();
+			List<String> failed = new ArrayList<>();
+			for (int i = 0; i < shards.size(); i++) {
+				Host[] r = getShardResult(results.get(i));
+				if (r == null) {
+					failed.add(shards.get(i));
+					continue;
+				}
+				for (Host host: r) {
+					hosts.putIfAbsent(host.address, host);
+				}
+			}
+			failedShards = Collections.unmodifiableList(failed);
+			if (failed.size() == shards.size()) {
+				return null;
+			}
+			return hosts.values().toArray(new Host[hosts.size()]);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * @return List<String> of the shards that failed in the last discover
+	 */
+	public List<String> getFailedShards () {
+		return failedShards;
+	}
+
+	private static Host[] getShardResult (Future<Host[]> result) {
+		try {
+			return result.get();
+		} catch (ExecutionException e) {
+			e.getCause().printStackTrace();
+			return null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+	}
+}
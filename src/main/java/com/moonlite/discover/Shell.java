@@ -7,6 +7,8 @@ import java.io.*;
  * @author Dahai Li
  *
  *@see Runtime, ProcessBuilder(JDK7)
+ *@see ProcessRunner, which reads the output while the command runs. run waits for the command
+ *first, so a command that fills the pipe, e.g) nmap, never finishes.
  *http://www.google.com/search?q=java+execute+shell+command
  *
  *
@@ -21,11 +23,25 @@ public class Shell {
 	 * @throws InterruptedException 
 	 */
 	public int run (String... args) throws IOException, InterruptedException {
+		Object span = Events.beginProcess();
 		process = Runtime.getRuntime().exec(args);
 		process.waitFor();
+		Events.endProcess(span, args, process.exitValue(), -1);
 		return process.exitValue();
 	}
 
+	/**
+	 * Start the command without waiting for it to finish, so that its output can be
+	 * read while it is still running.
+	 * @param args String[] arguments
+	 * @return the started process.
+	 * @throws IOException
+	 */
+	public Process start (String... args) throws IOException {
+		process = Runtime.getRuntime().exec(args);
+		return process;
+	}
+
 	/**
 	 * 
 	 * @return the exit value from the last invokation of run
@@ -0,0 +1,385 @@
+package com.moonlite.discover;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import com.sun.management.UnixOperatingSystemMXBean;
+
+/**
+ *
+ * @author Dahai Li
+ *
+ * TcpSweep finds the live hosts of a network by TCP connect probes, without nmap or root.
+ * A host is alive if a probe to any of the ports connects, or is refused: a refusal (RST) comes
+ * from the host itself. A probe that gets no answer before its deadline, or an unreachable error,
+ * does not count.
+ * All the probes run on one thread: up to maxInFlight non-blocking connects are in flight at once,
+ * and a Selector waits for them. The first port is probed on all the addresses before the second, and
+ * so on, so that a host found on one port is not probed on the others. Where nothing answers, a /16
+ * with DEFAULT_PORTS is still 65536 * 3 probes: about 196608 / maxInFlight deadlines of 300 ms, e.g)
+ * 15 seconds with 4096 in flight, instead of 65536 calls of InetAddress.isReachable.
+ * Each probe in flight holds a socket. A socket that cannot be opened, e.g) when the process is out of
+ * file descriptors, is a local error, not an unreachable host: maxInFlight is lowered to half of the
+ * probes that fit, and the probes over it are closed, and started again later.
+ * The hosts found have only an address: no name or OS.
+ */
+public class TcpSweep implements Discover {
+	/***
+	 * Ports most likely to answer on servers, workstations and network devices.
+	 */
+	public static final int[] DEFAULT_PORTS = {80, 443, 22};
+
+	private final int[] ports;
+	private final long timeoutMillis;
+	private final int maxInFlight;
+
+	/**
+	 * Probe DEFAULT_PORTS with a deadline of 300 ms, defaultMaxInFlight() probes at a time. The
+	 * deadline is well above the round trip of a LAN, but may miss a host far away.
+	 */
+	public TcpSweep () {
+		this(DEFAULT_PORTS, 300, defaultMaxInFlight());
+	}
+
+	/**
+	 * Each probe in flight holds a file descriptor, so the default is half of those the process has
+	 * left, up to 4096, and at least 16.
+	 * @return int, the default maxInFlight of TcpSweep and PortScan, 256 if the limit is not known,
+	 *         e.g) on Windows
+	 */
+	static int defaultMaxInFlight () {
+		try {
+			OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+			if (os instanceof UnixOperatingSystemMXBean) {
+				UnixOperatingSystemMXBean unix = (UnixOperatingSystemMXBean) os;
+				long left = unix.getMaxFileDescriptorCount() - unix.getOpenFileDescriptorCount();
+				return (int) Math.max(16, Math.min(4096, left / 2));
+			}
+		} catch (LinkageError e) {
+			// not a JDK with com.sun.management
+		}
+		return 256;
+	}
+
+	/**
+	 * @param ports int[], the ports to probe on each address
+	 * @param timeoutMillis long, the deadline of each probe
+	 * @param maxInFlight int, the maximum number of probes in flight, each of which holds a socket
+	 */
+	public TcpSweep (int[] ports, long timeoutMillis, int maxInFlight) {
+		if (ports.length == 0 || timeoutMillis <= 0 || maxInFlight < 1) {
+			throw new IllegalArgumentException("Invalid ports " + Arrays.toString(ports) + ", timeout "
+					+ timeoutMillis + " or maxInFlight " + maxInFlight);
+		}
+		this.ports = ports.clone();
+		this.timeoutMillis = timeoutMillis;
+		this.maxInFlight = maxInFlight;
+	}
+
+	/**
+	 * @param target String, networks or hosts separated by spaces, e.g) "10.28.0.0/16 www.microsoft.com"
+	 * @return Host[] of the live hosts in address order, or null if a host name cannot be resolved or
+	 *         the sweep fails.
+	 */
+	@Override
+	public Host[] discover (Object target) {
+		try {
+			return sweep((String) target);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * @param target String, see discover
+	 * @return Host[] of the live hosts in address order
+	 * @throws IOException if a host name cannot be resolved, the selector cannot be opened, or a socket
+	 *         cannot be opened with no probe in flight
+	 */
+	public Host[] sweep (String target) throws IOException {
+		Iterator<Probe> probes = probes(target);
+		Set<String> alive = new HashSet<>();
+		// probes in the order they were started, which is also the order of their deadlines
+		ArrayDeque<Probe> inFlight = new ArrayDeque<>();
+		int open = 0;
+		int limit = maxInFlight;
+		// probes to start again, before the next ones, after a local error
+		ArrayDeque<Probe> retry = new ArrayDeque<>();
+		try (Selector selector = Selector.open()) {
+			while (!retry.isEmpty() || probes.hasNext() || open > 0) {
+				while ((!retry.isEmpty() || probes.hasNext()) && open < limit) {
+					Probe probe = !retry.isEmpty() ? retry.poll() : probes.next();
+					try {
+						if (!alive.contains(probe.address) && probe.start(selector, System.nanoTime())) {
+							inFlight.add(probe);
+							open++;
+						} else if (probe.alive) {
+							alive.add(probe.address);
+						}
+					} catch (IOException e) {
+						// a local error, e.g) out of file descriptors, says nothing of the host
+						if (open == 0) {
+							throw e;
+						}
+						// take back the newest half of the probes in flight, to leave the rest of the
+						// process some descriptors too, and start them again later
+						retry.addFirst(probe);
+						limit = Math.max(1, open / 2);
+						while (open > limit) {
+							Probe last = inFlight.pollLast();
+							if (!last.closed()) {
+								last.close();
+								open--;
+								retry.addFirst(last);
+							}
+						}
+					}
+				}
+
+				// drop the finished probes, and close the ones past their deadline
+				long now = System.nanoTime();
+				while (!inFlight.isEmpty() && (inFlight.peek().closed() || inFlight.peek().deadline - now <= 0)) {
+					Probe probe = inFlight.poll();
+					if (!probe.closed()) {
+						probe.close();
+						open--;
+					}
+				}
+				Probe first = inFlight.peek();
+				if (first == null) {
+					continue;
+				}
+				selector.select(Math.max(1, (first.deadline - now) / 1000000));
+				for (SelectionKey key: selector.selectedKeys()) {
+					Probe probe = (Probe) key.attachment();
+					probe.finish();
+					open--;
+					if (probe.alive) {
+						alive.add(probe.address);
+					}
+				}
+				selector.selectedKeys().clear();
+			}
+		}
+		List<Host> result = new ArrayList<>();
+		for (String address: alive) {
+			result.add(new Host(address, null, null));
+		}
+		Collections.sort(result, ScanDiff.BY_ADDRESS);
+		return result.toArray(new Host[result.size()]);
+	}
+
+	/**
+	 * @param address String, a host name or address
+	 * @return true if the host is alive
+	 * @throws IOException if the host name cannot be resolved
+	 */
+	public boolean isAlive (String address) throws IOException {
+		return sweep(address).length > 0;
+	}
+
+	/**
+	 * The first port on all the addresses, then the second, and so on.
+	 */
+	private Iterator<Probe> probes (String target) throws IOException {
+		List<Object> targets = targets(target);
+		return new Iterator<Probe>() {
+			Iterator<InetAddress> addresses = addresses(targets);
+			int port = 0;
+
+			@Override
+			public boolean hasNext () {
+				if (!addresses.hasNext() && port + 1 < ports.length) {
+					port++;
+					addresses = addresses(targets);
+				}
+				return addresses.hasNext();
+			}
+
+			@Override
+			public Probe next () {
+				hasNext();
+				return new Probe(addresses.next(), ports[port]);
+			}
+		};
+	}
+
+	/**
+	 * Resolve the host names first, so that a bad name fails before any probe is sent.
+	 * The addresses of a network are generated as they are probed.
+	 * @param target String, networks or hosts separated by spaces
+	 * @return Iterator<InetAddress> of the addresses of the target
+	 * @throws IOException if a host name cannot be resolved
+	 */
+	static Iterator<InetAddress> addresses (String target) throws IOException {
+		return addresses(targets(target));
+	}
+
+	/**
+	 * @param target String, networks or hosts separated by spaces
+	 * @return List of a Cidr for each network, and an InetAddress for each host
+	 * @throws IOException if a host name cannot be resolved
+	 */
+	private static List<Object> targets (String target) throws IOException {
+		List<Object> targets = new ArrayList<>();
+		for (String t: target.trim().split("\\s+")) {
+			Cidr cidr = Cidr.parse(t);
+			targets.add(cidr != null ? cidr : InetAddress.getByName(t));
+		}
+		return targets;
+	}
+
+	private static Iterator<InetAddress> addresses (List<Object> targets) {
+		return new Iterator<InetAddress>() {
+			int i = 0;
+			long index = 0;
+
+			@Override
+			public boolean hasNext () {
+				return i < targets.size();
+			}
+
+			@Override
+			public InetAddress next () {
+				Object t = targets.get(i);
+				if (!(t instanceof Cidr)) {
+					i++;
+					return (InetAddress) t;
+				}
+				Cidr cidr = (Cidr) t;
+				InetAddress address = toInetAddress(cidr.address(index));
+				if (++index == cidr.size()) {
+					index = 0;
+					i++;
+				}
+				return address;
+			}
+		};
+	}
+
+	private static InetAddress toInetAddress (int address) {
+		byte[] bytes = {(byte) (address >>> 24), (byte) (address >>> 16), (byte) (address >>> 8), (byte) address};
+		try {
+			return InetAddress.getByAddress(bytes);
+		} catch (IOException e) {
+			// only thrown for an address of a wrong length
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/***
+	 * A connect probe to one port of one address.
+	 */
+	private class Probe {
+		final String address;
+		final InetSocketAddress socketAddress;
+		SocketChannel channel = null;
+		long deadline;
+		boolean alive = false;
+
+		Probe (InetAddress address, int port) {
+			this.address = address.getHostAddress();
+			this.socketAddress = new InetSocketAddress(address, port);
+		}
+
+		/**
+		 * @return true if the probe is in flight, false if it is already finished
+		 * @throws IOException if the socket cannot be opened or registered, e.g) out of file descriptors.
+		 *         The probe is not finished, and can be started again.
+		 */
+		boolean start (Selector selector, long now) throws IOException {
+			try {
+				channel = SocketChannel.open();
+				channel.configureBlocking(false);
+			} catch (IOException e) {
+				close();
+				throw e;
+			}
+			try {
+				if (channel.connect(socketAddress)) {
+					alive = true;
+					close();
+					return false;
+				}
+			} catch (ConnectException e) {
+				alive = true;
+				close();
+				return false;
+			} catch (IOException e) {
+				// unreachable
+				close();
+				return false;
+			}
+			try {
+				channel.register(selector, SelectionKey.OP_CONNECT, this);
+			} catch (IOException e) {
+				close();
+				throw e;
+			}
+			deadline = now + timeoutMillis * 1000000;
+			return true;
+		}
+
+		void finish () {
+			try {
+				channel.finishConnect();
+				alive = true;
+			} catch (ConnectException e) {
+				// refused: the host is there
+				alive = true;
+			} catch (IOException e) {
+				// unreachable
+			}
+			close();
+		}
+
+		boolean closed () {
+			return channel == null;
+		}
+
+		void close () {
+			if (channel != null) {
+				try {
+					// also cancels the key
+					channel.close();
+				} catch (IOException e) {
+				}
+				channel = null;
+			}
+		}
+	}
+
+	/***
+	 * For test only
+	 * Example:
+	 *     java TcpSweep 10.28.0.0/16
+	 * @param args String[] networks or hosts
+	 */
+	public static void main (String[] args) {
+		long start = System.currentTimeMillis();
+		Host[] hosts = new TcpSweep().discover(String.join(" ", args));
+		if (hosts == null) {
+			System.exit(-1);
+		}
+		for (Host host: hosts) {
+			System.out.println(host.address);
+		}
+		System.out.println(hosts.length + " hosts alive in " + (System.currentTimeMillis() - start) + " ms");
+	}
+}
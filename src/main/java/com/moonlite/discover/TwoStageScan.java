@@ -0,0 +1,155 @@
+package com.moonlite.discover;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ *
+ * @author Dahai Li
+ *
+ * TwoStageScan discovers a sparse network in two stages:
+ *   1. liveness: a cheap sweep of the whole network for the live hosts, e.g) nmap -sn, or TcpSweep;
+ *   2. fingerprint: nmap -F -O on the live addresses only, in batches.
+ * OS detection is the slow part of a scan, and most of the addresses of our networks are empty,
+ * so it is run only where there is a host.
+ * The result has every live host: the fingerprint of the host if stage 2 found it, otherwise the host
+ * as stage 1 found it, e.g) with no OS. A batch that fails is reported by getFailedBatches.
+ */
+public class TwoStageScan implements Discover {
+	private final Discover liveness;
+	private final Discover fingerprint;
+	private final int batchSize;
+	private final int parallelism;
+	private volatile List<String> failedBatches = Collections.emptyList();
+
+	/**
+	 * nmap -sn, then nmap -F -O on batches of 256 live hosts, one batch at a time.
+	 */
+	public TwoStageScan () {
+		this(new NMapStAX(NMapCommand.PING_OPTIONS), new NMapStAX(), 256, 1);
+	}
+
+	/**
+	 * @param liveness Discover, finds the live hosts of the target, e.g) TcpSweep
+	 * @param fingerprint Discover, scans a batch of addresses separated by spaces
+	 * @param batchSize int, the maximum number of addresses scanned by one call of fingerprint
+	 * @param parallelism int, the maximum number of batches scanned at the same time
+	 */
+	public TwoStageScan (Discover liveness, Discover fingerprint, int batchSize, int parallelism) {
+		if (batchSize < 1 || parallelism < 1) {
+			throw new IllegalArgumentException("Invalid batch size " + batchSize + " or parallelism " + parallelism);
+		}
+		this.liveness = liveness;
+		this.fingerprint = fingerprint;
+		this.batchSize = batchSize;
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * @param target String, passed to liveness, e.g) "10.28.0.0/16"
+	 * @return Host[] of the live hosts in address order, or null if the liveness stage fails
+	 */
+	@Override
+	public Host[] discover (Object target) {
+		Host[] live = liveness.discover(target);
+		if (live == null) {
+			return null;
+		}
+		Map<String, Host> result = new LinkedHashMap<>();
+		for (Host host: live) {
+			result.putIfAbsent(host.address, host);
+		}
+		List<String> batches = batches(new ArrayList<>(result.keySet()));
+		List<String> failed = new ArrayList<>();
+		if (!batches.isEmpty()) {
+			ExecutorService pool = Executors.newFixedThreadPool(Math.min(parallelism, batches.size()));
+			try {
+				List<Future<Host[]>> scans = new ArrayList<>();
+				for (String batch: batches) {
+					scans.add(pool.submit(() -> fingerprint.discover(batch)));
+				}
+				for (int i = 0; i < scans.size(); i++) {
+					Host[] hosts = get(scans.get(i));
+					if (hosts == null) {
+						failed.add(batches.get(i));
+						continue;
+					}
+					for (Host host: hosts) {
+						// only the addresses found live: a name given as target may resolve differently
+						if (result.containsKey(host.address)) {
+							result.put(host.address, host);
+						}
+					}
+				}
+			} finally {
+				pool.shutdownNow();
+			}
+		}
+		failedBatches = Collections.unmodifiableList(failed);
+		Host[] r = result.values().toArray(new Host[result.size()]);
+		Arrays.sort(r, ScanDiff.BY_ADDRESS);
+		return r;
+	}
+
+	/**
+	 * @return List<String>, the batches of the last discover that failed in the fingerprint stage
+	 */
+	public List<String> getFailedBatches () {
+		return failedBatches;
+	}
+
+	/**
+	 * @param addresses List<String>
+	 * @return List<String>, the addresses in address order, batchSize at a time, separated by spaces
+	 */
+	List<String> batches (List<String> addresses) {
+		List<String> sorted = new ArrayList<>(addresses);
+		sorted.sort(ScanDiff::compareAddress);
+		List<String> result = new ArrayList<>();
+		for (int i = 0; i < sorted.size(); i += batchSize) {
+			result.add(String.join(" ", sorted.subList(i, Math.min(i + batchSize, sorted.size()))));
+		}
+		return result;
+	}
+
+	private static Host[] get (Future<Host[]> future) {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			e.getCause().printStackTrace();
+			return null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+	}
+
+	/***
+	 * For test only: compare the time of a two-stage scan with a full scan.
+	 * Example:
+	 *     java TwoStageScan 10.28.0.0/16
+	 * @param args String[], the network
+	 */
+	public static void main (String[] args) {
+		String network = String.join(" ", args);
+		long start = System.currentTimeMillis();
+		Host[] hosts = new TwoStageScan().discover(network);
+		long twoStage = System.currentTimeMillis() - start;
+		start = System.currentTimeMillis();
+		Host[] full = new NMapStAX().discover(network);
+		long single = System.currentTimeMillis() - start;
+		if (hosts == null || full == null) {
+			System.exit(-1);
+		}
+		System.out.println("two-stage: " + hosts.length + " hosts in " + twoStage + " ms; full: "
+				+ full.length + " hosts in " + single + " ms");
+	}
+}
@@ -0,0 +1,128 @@
+package com.moonlite.discover;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+
+import org.jdom2.input.SAXBuilder;
+
+/**
+ *
+ * @author Dahai Li
+ *
+ * XMLParsers is the shared pool of XML parsers used by the nmap readers.
+ * Creating a DocumentBuilderFactory, a DocumentBuilder, or a SAXBuilder looks up the implementation and
+ * sets it up, which costs more than parsing a small nmap file. So:
+ *   - the factories are created once, and
+ *   - each thread reuses its own DocumentBuilder and SAXBuilder, which are not thread-safe.
+ * The hits and misses of the per-thread builders are counted.
+ *
+ * nmap output declares <!DOCTYPE nmaprun>, and refers to an xml-stylesheet. Neither is needed to read it,
+ * so all the parsers are set up not to load external DTDs or external entities.
+ */
+public final class XMLParsers {
+	private static final String LOAD_EXTERNAL_DTD = "http://apache.org/xml/features/nonvalidating/load-external-dtd";
+	private static final String EXTERNAL_GENERAL_ENTITIES = "http://xml.org/sax/features/external-general-entities";
+	private static final String EXTERNAL_PARAMETER_ENTITIES = "http://xml.org/sax/features/external-parameter-entities";
+
+	private static final DocumentBuilderFactory documentBuilderFactory = createDocumentBuilderFactory();
+	private static final XMLInputFactory inputFactory = createInputFactory();
+
+	private static final ThreadLocal<DocumentBuilder> documentBuilders = new ThreadLocal<>();
+	private static final ThreadLocal<SAXBuilder> saxBuilders = new ThreadLocal<>();
+
+	private static final AtomicLong hits = new AtomicLong();
+	private static final AtomicLong misses = new AtomicLong();
+
+	private XMLParsers () {
+	}
+
+	/**
+	 * @return DocumentBuilder of the current thread, reset to its initial state.
+	 *         It must not be used by another thread.
+	 * @throws ParserConfigurationException
+	 */
+	public static DocumentBuilder documentBuilder () throws ParserConfigurationException {
+		DocumentBuilder builder = documentBuilders.get();
+		if (builder != null) {
+			hits.incrementAndGet();
+			builder.reset();
+			return builder;
+		}
+		misses.incrementAndGet();
+		synchronized (documentBuilderFactory) {
+			// DocumentBuilderFactory is not thread-safe
+			builder = documentBuilderFactory.newDocumentBuilder();
+		}
+		documentBuilders.set(builder);
+		return builder;
+	}
+
+	/**
+	 * @return SAXBuilder of the current thread. It must not be used by another thread.
+	 */
+	public static SAXBuilder saxBuilder () {
+		SAXBuilder builder = saxBuilders.get();
+		if (builder != null) {
+			hits.incrementAndGet();
+			return builder;
+		}
+		misses.incrementAndGet();
+		builder = new SAXBuilder();
+		builder.setFeature(LOAD_EXTERNAL_DTD, false);
+		builder.setFeature(EXTERNAL_GENERAL_ENTITIES, false);
+		builder.setFeature(EXTERNAL_PARAMETER_ENTITIES, false);
+		// keep the underlying SAX parser between documents
+		builder.setReuseParser(true);
+		saxBuilders.set(builder);
+		return builder;
+	}
+
+	/**
+	 * @return XMLInputFactory, shared by all the threads. It is thread-safe once it is set up.
+	 */
+	public static XMLInputFactory inputFactory () {
+		return inputFactory;
+	}
+
+	/**
+	 * @return long, the number of times a thread reused its builder
+	 */
+	public static long getHits () {
+		return hits.get();
+	}
+
+	/**
+	 * @return long, the number of builders created
+	 */
+	public static long getMisses () {
+		return misses.get();
+	}
+
+	private static DocumentBuilderFactory createDocumentBuilderFactory () {
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		try {
+			factory.setFeature(LOAD_EXTERNAL_DTD, false);
+			factory.setFeature(EXTERNAL_GENERAL_ENTITIES, false);
+			factory.setFeature(EXTERNAL_PARAMETER_ENTITIES, false);
+			factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+		} catch (ParserConfigurationException e) {
+			throw new IllegalStateException("XML parser does not support " + e.getMessage(), e);
+		}
+		factory.setXIncludeAware(false);
+		factory.setExpandEntityReferences(false);
+		return factory;
+	}
+
+	private static XMLInputFactory createInputFactory () {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		// nmap output declares <!DOCTYPE nmaprun> without any external subset; there is nothing to load.
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		return factory;
+	}
+}
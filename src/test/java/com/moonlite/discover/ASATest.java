@@ -2,7 +2,9 @@ package com.moonlite.discover;
 
 import static org.junit.Assert.*;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.StringReader;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.Arrays;
@@ -278,6 +280,56 @@ public class ASATest {
         assertEquals(cmd.toString(), "main\n sub1\n  sub1.1\n sub2");
     }
     
+    @Test
+    /***
+     * Test that parsing the running-config as a stream gives the same configuration as parsing its lines.
+     */
+    public void testGetConfigurationFromStream() throws IOException {
+        String[] runningConfig = {
+                "interface GigabitEthernet0/3",
+                " nameif inside",
+                " security-level 100",
+                " ip address 192.168.103.1 255.255.255.0",
+                "!",
+                "hostname asa",
+                "access-list inside_access_in extended permit ip any any",
+                "access-list class-map-inside-access-list extended permit tcp any any eq www",
+                "access-list unused extended deny ip any any",
+                "!",
+                "class-map class-map-inside",
+                " match access-list class-map-inside-access-list",
+                "policy-map policy-map-inside",
+                " class class-map-inside",
+                "  inspect ftp",
+                "access-group inside_access_in in interface inside",
+                "service-policy policy-map-inside interface inside",
+        };
+        String text = String.join("\r\n", runningConfig);
+        ASA.Configuration expected = new ASA.Configuration(runningConfig, "192.168.103.1/24");
+        ASA.Configuration config = new ASA.Configuration(new BufferedReader(new StringReader(text)), "192.168.103.1/24");
+        assertEquals(expected.toString(), config.toString());
+        assertEquals(2, config.accessLists.length);
+        assertEquals("inside", config.intf.getNameIf());
+        assertEquals(expected.toString(), new ASA.Configuration(text, "192.168.103.1/24").toString());
+    }
+
+    @Test
+    /***
+     * Test getting the configuration from a stand-in for the https server of an ASA.
+     */
+    public void testGetConfigurationFromStub() throws Exception {
+        try (HttpsStub stub = new HttpsStub()) {
+            stub.body = "interface GigabitEthernet0/3\n nameif inside\n ip address 192.168.103.1 255.255.255.0\n"
+                    + "!\naccess-group inside_access_in in interface inside\n";
+            ASA asa = new ASA(stub.address(), "cisco", "cisco");
+            ASA.Configuration config = asa.getConfiguration("192.168.103.1/24");
+            assertArrayEquals(new Object[] {"access-group inside_access_in in interface inside"}, config.accessGroups);
+            // the connection is kept for the next call
+            asa.getConfiguration("192.168.103.1/24");
+            assertEquals(1, stub.connections.size());
+        }
+    }
+
     @Ignore
     public void testFlatMap() {
         //Stream::flatMap: to map stream of streams to a single stream
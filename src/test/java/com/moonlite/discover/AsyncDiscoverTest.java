@@ -0,0 +1,123 @@
+package com.moonlite.discover;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+
+public class AsyncDiscoverTest {
+
+	private String getFilePath(String fileName) {
+		ClassLoader classLoader = getClass().getClassLoader();
+		String dirPath = getClass().getPackage().getName().replace('.', '/');
+		return classLoader.getResource(dirPath + "/" + fileName).getFile();
+	}
+
+	private String tempFile() throws IOException {
+		File f = File.createTempFile("nmap", ".xml");
+		f.deleteOnExit();
+		return f.getAbsolutePath();
+	}
+
+	private static void waitUntilDone(int running) throws InterruptedException {
+		for (int i = 0; i < 100 && AsyncScan.getRunning() > running; i++) {
+			Thread.sleep(AsyncScan.POLL_MILLIS);
+		}
+	}
+
+	@Test
+	public void testScanTarget() {
+		assertEquals("10.28.0.0/16", ScanTarget.cidr("10.28.1.1/16").toString());
+		assertEquals(ScanTarget.Kind.CIDR, ScanTarget.cidr("10.28.0.0/16").getKind());
+		assertEquals(Arrays.asList("www.microsoft.com", "10.0.0.1"),
+				ScanTarget.hosts(" www.microsoft.com", "10.0.0.1").getTargets());
+		assertEquals("10.0.0.5 10.0.0.6/31 10.0.0.8/29 10.0.0.16/30 10.0.0.20",
+				ScanTarget.range("10.0.0.5", "10.0.0.20").toString());
+		assertEquals("0.0.0.0/0", ScanTarget.range("0.0.0.0", "255.255.255.255").toString());
+		assertEquals("10.0.0.0/24", ScanTarget.range("10.0.0.0", "10.0.0.255").toString());
+		for (Runnable bad: new Runnable[] {
+				() -> ScanTarget.cidr("www.microsoft.com/24"),
+				() -> ScanTarget.hosts(),
+				() -> ScanTarget.hosts("a b"),
+				() -> ScanTarget.range("10.0.0.2", "10.0.0.1"),
+				() -> ScanTarget.range("10.0.0.1", "::1")}) {
+			try {
+				bad.run();
+				fail();
+			} catch (IllegalArgumentException e) {
+			}
+		}
+	}
+
+	@Test
+	public void testComplete() throws Exception {
+		String out = tempFile();
+		CompletableFuture<Host[]> future = AsyncScan.start(
+				new String[] {"cp", getFilePath("www.microsoft.com.xml"), out}, out, 10, TimeUnit.SECONDS,
+				new NMap()::readXMLFile);
+		Host[] hosts = future.get(10, TimeUnit.SECONDS);
+		assertArrayEquals(new NMap().readXMLFile(getFilePath("www.microsoft.com.xml")), hosts);
+		assertFalse(new File(out).exists());
+	}
+
+	@Test
+	public void testFailure() throws Exception {
+		String out = tempFile();
+		CompletableFuture<Host[]> future = AsyncScan.start(new String[] {"ls", "/junk"}, out, 10,
+				TimeUnit.SECONDS, new NMap()::readXMLFile);
+		try {
+			future.get(10, TimeUnit.SECONDS);
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IOException);
+			assertTrue(e.getCause().getMessage(), e.getCause().getMessage().contains("/junk"));
+		}
+
+		future = AsyncScan.start(new String[] {"no-such-command"}, out, 10, TimeUnit.SECONDS,
+				new NMap()::readXMLFile);
+		assertTrue(future.isCompletedExceptionally());
+	}
+
+	@Test
+	public void testTimeout() throws Exception {
+		String out = tempFile();
+		int running = AsyncScan.getRunning();
+		long start = System.nanoTime();
+		CompletableFuture<Host[]> future = AsyncScan.start(new String[] {"sleep", "30"}, out, 200,
+				TimeUnit.MILLISECONDS, new NMap()::readXMLFile);
+		try {
+			future.get(10, TimeUnit.SECONDS);
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof TimeoutException);
+		}
+		assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+		waitUntilDone(running);
+		assertEquals(running, AsyncScan.getRunning());
+	}
+
+	@Test
+	public void testCancel() throws Exception {
+		String out = tempFile();
+		int running = AsyncScan.getRunning();
+		CompletableFuture<Host[]> future = AsyncScan.start(new String[] {"sleep", "30"}, out, 0,
+				TimeUnit.SECONDS, new NMap()::readXMLFile);
+		assertFalse(future.isDone());
+		assertTrue(future.cancel(true));
+		try {
+			future.get();
+			fail();
+		} catch (CancellationException e) {
+		}
+		waitUntilDone(running);
+		assertEquals(running, AsyncScan.getRunning());
+	}
+}
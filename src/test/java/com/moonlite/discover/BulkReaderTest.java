@@ -0,0 +1,81 @@
+package com.moonlite.discover;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+public class BulkReaderTest {
+
+	private Path getFilePath(String fileName) {
+		ClassLoader classLoader = getClass().getClassLoader();
+		String dirPath = getClass().getPackage().getName().replace('.', '/');
+		return Paths.get(classLoader.getResource(dirPath + "/" + fileName).getFile());
+	}
+
+	@Test
+	/***
+	 * Read a spool with the same scan twice, a broken file, and a file that is not xml.
+	 */
+	public void testReadDirectory() throws Exception {
+		Path spool = Files.createTempDirectory("spool");
+		String[] files = {"sample-nmap.xml", "belize.cisco.com.xml", "www.microsoft.com.xml"};
+		for (String file: files) {
+			Files.copy(getFilePath(file), spool.resolve(file));
+		}
+		Files.copy(getFilePath("belize.cisco.com.xml"), spool.resolve("belize-again.xml"));
+		Files.write(spool.resolve("broken.xml"), "<nmaprun><host><address addr=\"10.9.9.9\"/>".getBytes());
+		Files.write(spool.resolve("notes.txt"), "not a scan".getBytes());
+
+		List<Host> hosts = new ArrayList<>();
+		BulkReader.Report report = new BulkReader(new ForkJoinPool(3)).read(spool.toString(), hosts::add);
+
+		Set<String> expected = new HashSet<>();
+		for (String file: files) {
+			for (Host host: new NMapStAX().readXMLFile(getFilePath(file).toString())) {
+				expected.add(host.address);
+			}
+		}
+		Set<String> addresses = new HashSet<>();
+		for (Host host: hosts) {
+			assertTrue("No duplicate " + host.address, addresses.add(host.address));
+		}
+		assertEquals(expected, addresses);
+		assertEquals(5, report.files.size());
+		assertEquals(hosts.size(), report.hosts);
+		assertEquals(new NMapStAX().readXMLFile(getFilePath("belize.cisco.com.xml").toString()).length, report.duplicates);
+		assertEquals(1, report.errors.size());
+		assertTrue(report.errors.containsKey(spool.resolve("broken.xml")));
+
+		for (File f: spool.toFile().listFiles()) {
+			f.delete();
+		}
+		Files.delete(spool);
+	}
+
+	@Test
+	public void testGlob() throws Exception {
+		Path spool = Files.createTempDirectory("spool");
+		Files.copy(getFilePath("sample-nmap.xml"), spool.resolve("scan-1.xml"));
+		Files.copy(getFilePath("belize.cisco.com.xml"), spool.resolve("other.xml"));
+		List<Host> hosts = new ArrayList<>();
+		BulkReader.Report report = new BulkReader().read(spool.resolve("scan-*.xml").toString(), hosts::add);
+		assertEquals(1, report.files.size());
+		assertEquals(2, hosts.size());
+		assertTrue(report.errors.isEmpty());
+
+		for (File f: spool.toFile().listFiles()) {
+			f.delete();
+		}
+		Files.delete(spool);
+	}
+}
@@ -0,0 +1,39 @@
+package com.moonlite.discover;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class CidrTest {
+
+	@Test
+	public void testParseIPv4() {
+		assertEquals(0x0a1c1d60, Addresses.parseIPv4("10.28.29.96"));
+		assertEquals("255.255.255.255", Addresses.formatIPv4(Addresses.parseIPv4("255.255.255.255")));
+		assertFalse(Addresses.isIPv4("10.28.29"));
+		assertFalse(Addresses.isIPv4("10.28.29.256"));
+		assertFalse(Addresses.isIPv4("www.microsoft.com"));
+		assertFalse(Addresses.isIPv4("fe80::1"));
+	}
+
+	@Test
+	public void testParse() {
+		assertEquals("10.28.0.0/16", Cidr.parse("10.28.29.96/16").toString());
+		assertEquals("10.28.29.96/32", Cidr.parse("10.28.29.96").toString());
+		assertNull(Cidr.parse("www.microsoft.com/24"));
+		assertNull(Cidr.parse("10.28.0.0/33"));
+	}
+
+	@Test
+	public void testSplit() {
+		List<Cidr> shards = Cidr.parse("10.28.0.0/16").split(24);
+		assertEquals(256, shards.size());
+		assertEquals("10.28.0.0/24", shards.get(0).toString());
+		assertEquals("10.28.255.0/24", shards.get(255).toString());
+		assertEquals(1, Cidr.parse("10.28.1.0/24").split(16).size());
+		assertTrue(Cidr.parse("10.28.0.0/16").contains(Addresses.parseIPv4("10.28.200.1")));
+		assertFalse(Cidr.parse("10.28.0.0/16").contains(Addresses.parseIPv4("10.29.0.1")));
+	}
+}
@@ -0,0 +1,136 @@
+package com.moonlite.discover;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class DiscoverySchedulerTest {
+
+	/***
+	 * Scans that complete only when the test says so.
+	 */
+	private static class Pending implements AsyncDiscover {
+		final List<String> targets = new ArrayList<>();
+		final List<CompletableFuture<Host[]>> futures = new ArrayList<>();
+
+		@Override
+		public CompletableFuture<Host[]> discoverAsync(ScanTarget target, long timeout, TimeUnit unit) {
+			CompletableFuture<Host[]> future = new CompletableFuture<>();
+			targets.add(target.toString());
+			futures.add(future);
+			return future;
+		}
+	}
+
+	private static class Results implements DiscoveryScheduler.Listener {
+		final List<String> names = new ArrayList<>();
+		final List<ScanDiff> diffs = new ArrayList<>();
+		final List<Throwable> errors = new ArrayList<>();
+
+		@Override
+		public void discovered(String name, Host[] hosts, ScanDiff diff) {
+			names.add(name);
+			diffs.add(diff);
+		}
+
+		@Override
+		public void failed(String name, Throwable cause) {
+			names.add(name);
+			errors.add(cause);
+		}
+	}
+
+	@Test
+	public void testCapAndPriority() {
+		Pending discover = new Pending();
+		Results results = new Results();
+		DiscoveryScheduler scheduler = new DiscoveryScheduler(discover, 2, 0, results);
+		scheduler.register("low", ScanTarget.hosts("10.0.0.1"), 60000, 0);
+		scheduler.register("high", ScanTarget.hosts("10.0.0.2"), 60000, 10);
+		scheduler.register("mid", ScanTarget.hosts("10.0.0.3"), 60000, 5);
+		long now = System.currentTimeMillis();
+		scheduler.dispatch(now);
+		assertEquals(2, scheduler.getRunning());
+		assertEquals(1, scheduler.getQueueDepth());
+		assertEquals("[10.0.0.2, 10.0.0.3]", discover.targets.toString());
+
+		// the cap holds however often dispatch is called
+		scheduler.dispatch(now);
+		assertEquals(2, discover.futures.size());
+
+		discover.futures.get(0).complete(new Host[0]);
+		assertEquals("[high]", results.names.toString());
+		assertNull(results.diffs.get(0));
+		scheduler.dispatch(System.currentTimeMillis());
+		assertEquals("[10.0.0.2, 10.0.0.3, 10.0.0.1]", discover.targets.toString());
+		assertEquals(0, scheduler.getQueueDepth());
+		assertEquals(0, scheduler.getLagMillis());
+		assertEquals(3, scheduler.getStarted());
+
+		discover.futures.get(1).completeExceptionally(new RuntimeException("nmap failed"));
+		assertEquals(1, results.errors.size());
+		assertEquals(1, scheduler.getRunning());
+	}
+
+	@Test
+	public void testBackoff() {
+		Pending discover = new Pending();
+		Results results = new Results();
+		DiscoveryScheduler scheduler = new DiscoveryScheduler(discover, 1, 0, results);
+		scheduler.register("lab", ScanTarget.cidr("10.0.0.0/24"), 1000, 0);
+		Host[] hosts = {new Host("10.0.0.1", "a", "Linux")};
+		long future = System.currentTimeMillis() + 1000000;
+
+		scheduler.dispatch(future);
+		discover.futures.get(0).complete(hosts);
+		assertEquals(1000, scheduler.getIntervalMillis("lab"));
+		long[] expected = {2000, 4000, 8000, 8000};
+		for (int i = 0; i < expected.length; i++) {
+			scheduler.dispatch(future);
+			discover.futures.get(i + 1).complete(hosts);
+			assertTrue(results.diffs.get(i + 1).isEmpty());
+			assertEquals(expected[i], scheduler.getIntervalMillis("lab"));
+		}
+
+		// a change brings the interval back
+		scheduler.dispatch(future);
+		discover.futures.get(5).complete(new Host[] {new Host("10.0.0.1", "a", "Windows")});
+		assertEquals(1, results.diffs.get(5).getChanged().size());
+		assertEquals(1000, scheduler.getIntervalMillis("lab"));
+
+		// not due yet
+		scheduler.dispatch(System.currentTimeMillis());
+		assertEquals(6, discover.futures.size());
+		assertTrue(scheduler.unregister("lab"));
+		assertEquals(-1, scheduler.getIntervalMillis("lab"));
+	}
+
+	@Test
+	public void testTimer() throws Exception {
+		Pending discover = new Pending();
+		Results results = new Results();
+		DiscoveryScheduler scheduler = new DiscoveryScheduler(discover, 1, 0, results);
+		scheduler.register("a", ScanTarget.hosts("10.0.0.1"), 60000, 0);
+		scheduler.register("b", ScanTarget.hosts("10.0.0.2"), 60000, 0);
+		scheduler.start(60000);
+		try {
+			for (int i = 0; i < 100 && discover.futures.size() < 1; i++) {
+				Thread.sleep(10);
+			}
+			assertEquals(1, scheduler.getQueueDepth());
+			// completing a scan starts the next without waiting for the tick
+			discover.futures.get(0).complete(new Host[0]);
+			for (int i = 0; i < 100 && discover.futures.size() < 2; i++) {
+				Thread.sleep(10);
+			}
+			assertEquals(2, discover.futures.size());
+		} finally {
+			scheduler.stop();
+		}
+	}
+}
@@ -0,0 +1,107 @@
+package com.moonlite.discover;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.client.ClientProtocolException;
+import org.junit.Test;
+
+public class FleetCollectorTest {
+	private static final String RUNNING_CONFIG = "interface GigabitEthernet0/1\n"
+			+ " nameif inside\n"
+			+ " ip address 10.0.0.1 255.255.255.0\n"
+			+ "!\n"
+			+ "access-list inside_in extended permit ip any any\n"
+			+ "access-group inside_in in interface inside\n";
+
+	@Test
+	public void testCollect() throws Exception {
+		List<HttpsStub> stubs = new ArrayList<>();
+		PooledHttpClient client = new PooledHttpClient(20, 4, 30000, ApacheHttpClient.generousSSLContext(), false);
+		FleetCollector collector = new FleetCollector(client, 3, 1, 2);
+		try {
+			List<ASA> devices = new ArrayList<>();
+			for (int i = 0; i < 3; i++) {
+				HttpsStub stub = new HttpsStub();
+				stub.body = RUNNING_CONFIG;
+				stub.delayMillis = 100;
+				stubs.add(stub);
+			}
+			// 4 networks of each device
+			for (int i = 0; i < 12; i++) {
+				devices.add(new ASA(stubs.get(i % 3).address(), "cisco", "cisco"));
+			}
+			devices.add(new ASA(stubs.get(0).address(), "cisco", "wrong"));
+			devices.add(new ASA("127.0.0.1:1", "cisco", "cisco"));
+			// the first TLS handshake of the JVM takes a while
+			new ApacheHttpClient().get(stubs.get(0).url(), "cisco", "cisco");
+
+			long start = System.currentTimeMillis();
+			List<FleetCollector.Result> results = collector.collect(devices, "10.0.0.0/24");
+			long elapsed = System.currentTimeMillis() - start;
+			// 5 fetches in a row for the busiest device, rather than 13 in all
+			assertTrue("" + elapsed, elapsed < 1000);
+			for (HttpsStub stub: stubs) {
+				assertEquals(1, stub.maxRunning.get());
+			}
+
+			assertEquals(devices.size(), results.size());
+			for (int i = 0; i < 12; i++) {
+				FleetCollector.Result result = results.get(i);
+				assertSame(devices.get(i), result.getDevice());
+				assertTrue(result.toString(), result.isSuccess());
+				assertTrue(result.getFetchMillis() >= 100);
+				assertEquals("inside", result.getConfiguration().intf.getNameIf());
+				assertEquals(1, result.getConfiguration().accessLists.length);
+			}
+			assertFalse(results.get(12).isSuccess());
+			assertTrue(results.get(12).getError() instanceof ClientProtocolException);
+			assertNull(results.get(12).getConfiguration());
+			assertFalse(results.get(13).isSuccess());
+		} finally {
+			collector.shutdown();
+			client.close();
+			for (HttpsStub stub: stubs) {
+				stub.close();
+			}
+		}
+	}
+
+	@Test
+	public void testShutdown() throws Exception {
+		FleetCollector collector = new FleetCollector(PooledHttpClient.shared(), 1, 1, 1);
+		collector.shutdown();
+		List<ASA> devices = new ArrayList<>();
+		devices.add(new ASA("127.0.0.1:1", "cisco", "cisco"));
+		List<FleetCollector.Result> results = collector.collect(devices, "10.0.0.0/24");
+		assertFalse(results.get(0).isSuccess());
+	}
+
+	@Test
+	public void testError() throws Exception {
+		// an Error, e.g) out of memory on a large config, still gives the device a Result
+		PooledHttpClient client = new PooledHttpClient() {
+			@Override
+			public String get (String url, String username, String password) {
+				throw new StackOverflowError();
+			}
+		};
+		FleetCollector collector = new FleetCollector(client, 1, 1, 1);
+		try {
+			List<ASA> devices = new ArrayList<>();
+			devices.add(new ASA("127.0.0.1:1", "cisco", "cisco"));
+			devices.add(new ASA("127.0.0.1:2", "cisco", "cisco"));
+			for (CompletableFuture<FleetCollector.Result> future: collector.collectAsync(devices, "10.0.0.0/24")) {
+				FleetCollector.Result result = future.get(5, TimeUnit.SECONDS);
+				assertTrue(result.getError() instanceof StackOverflowError);
+			}
+		} finally {
+			collector.shutdown();
+			client.close();
+		}
+	}
+}
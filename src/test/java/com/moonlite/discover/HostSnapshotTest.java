@@ -0,0 +1,95 @@
+package com.moonlite.discover;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class HostSnapshotTest {
+
+	private String getFilePath(String fileName) {
+		ClassLoader classLoader = getClass().getClassLoader();
+		String dirPath = getClass().getPackage().getName().replace('.', '/');
+		return classLoader.getResource(dirPath + "/" + fileName).getFile();
+	}
+
+	private String tempFile() throws IOException {
+		File f = File.createTempFile("hosts", ".snap");
+		f.deleteOnExit();
+		return f.getAbsolutePath();
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		HostSnapshot snapshot = new HostSnapshot();
+		for (String file: new String[] {"sample-nmap.xml", "belize.cisco.com.xml", "www.microsoft.com.xml"}) {
+			Host[] hosts = new NMap().readXMLFile(getFilePath(file));
+			String snap = tempFile();
+			snapshot.write(hosts, snap);
+			assertArrayEquals(file, hosts, snapshot.read(snap));
+			assertArrayEquals(file, hosts, snapshot.readTable(snap).toArray());
+			assertTrue(new File(snap).length() < new File(getFilePath(file)).length() / 10);
+		}
+	}
+
+	@Test
+	public void testAddressKinds() throws Exception {
+		Host[] hosts = {
+				new Host("10.0.0.1", null, "Linux"),
+				new Host("fe80::1", "v6", "Linux"),
+				new Host("FE80::1", "", null),
+				new Host("www.microsoft.com", "www", "Linux"),
+		};
+		String snap = tempFile();
+		new HostSnapshot().write(hosts, snap);
+		assertArrayEquals(hosts, new HostSnapshot().read(snap));
+	}
+
+	@Test
+	public void testRejectsOtherFiles() throws Exception {
+		String snap = tempFile();
+		Files.write(new File(snap).toPath(), "<?xml version=\"1.0\"?>".getBytes());
+		try {
+			new HostSnapshot().read(snap);
+			fail("An xml file is not a snapshot");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("not a host snapshot"));
+		}
+
+		new HostSnapshot().write(new Host[] {new Host("10.0.0.1", "a", "b")}, snap);
+		byte[] bytes = Files.readAllBytes(new File(snap).toPath());
+		Files.write(new File(snap).toPath(), Arrays.copyOf(bytes, bytes.length - 3));
+		try {
+			new HostSnapshot().read(snap);
+			fail("A truncated snapshot is rejected");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("truncated"));
+		}
+	}
+
+	@Test
+	public void testRejectsCorruptedCounts() throws Exception {
+		String snap = tempFile();
+		new HostSnapshot().write(new Host[] {new Host("10.0.0.1", "a", "b")}, snap);
+		byte[] bytes = Files.readAllBytes(new File(snap).toPath());
+		// the count of strings, after the magic, the version and the flags; then the length of the first
+		for (int offset: new int[] {8, 12}) {
+			for (int count: new int[] {-1, Integer.MAX_VALUE, bytes.length}) {
+				byte[] corrupted = bytes.clone();
+				ByteBuffer.wrap(corrupted).putInt(offset, count);
+				Files.write(new File(snap).toPath(), corrupted);
+				try {
+					new HostSnapshot().read(snap);
+					fail("A count of " + count + " at " + offset + " is rejected");
+				} catch (IOException e) {
+					assertTrue(e.getMessage(), e.getMessage().contains("corrupted"));
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package com.moonlite.discover;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class HostTableTest {
+
+	private String getFilePath(String fileName) {
+		ClassLoader classLoader = getClass().getClassLoader();
+		String dirPath = getClass().getPackage().getName().replace('.', '/');
+		return classLoader.getResource(dirPath + "/" + fileName).getFile();
+	}
+
+	@Test
+	/***
+	 * The table gives back the same hosts as the reader that fills it.
+	 */
+	public void testFillFromReaders() throws Exception {
+		String fileName = getFilePath("www.microsoft.com.xml");
+		Host[] expecteds = new NMap().readXMLFile(fileName);
+
+		HostTable table = new HostTable();
+		new NMap().readXMLFile(fileName, table::add);
+		assertArrayEquals(expecteds, table.toArray());
+
+		table = new HostTable();
+		new NMapJDOM().readXMLFile(fileName, table);
+		assertEquals(expecteds.length, table.size());
+		assertEquals(expecteds[10], table.get(10));
+		assertTrue(table.isIPv4(10));
+		assertEquals(Addresses.parseIPv4(expecteds[10].address), table.getIPv4(10));
+	}
+
+	@Test
+	public void testAddresses() {
+		HostTable table = new HostTable(1);
+		table.add("10.0.0.1", null, "Linux");
+		table.add("fe80::20c:29ff:fe12:3456", "v6", "Linux");
+		table.add("2001:db8::1:0:0:1", null, null);
+		table.add("FE80::1", null, null);
+		table.add("www.microsoft.com", null, null);
+		assertEquals(5, table.size());
+		assertEquals(new Host("10.0.0.1", null, "Linux"), table.get(0));
+		assertEquals(new Host("fe80::20c:29ff:fe12:3456", "v6", "Linux"), table.get(1));
+		assertEquals("2001:db8::1:0:0:1", table.getAddress(2));
+		assertEquals("FE80::1", table.getAddress(3));
+		assertEquals("www.microsoft.com", table.getAddress(4));
+		assertFalse(table.isIPv4(1));
+	}
+
+	@Test
+	public void testIPv6() {
+		assertEquals("::", Addresses.formatIPv6(Addresses.parseIPv6("::")));
+		assertEquals("::1", Addresses.formatIPv6(Addresses.parseIPv6("0:0:0:0:0:0:0:1")));
+		assertEquals("2001:db8::ffff:102:304", Addresses.formatIPv6(Addresses.parseIPv6("2001:db8::ffff:1.2.3.4")));
+		assertEquals("1:0:0:1::", Addresses.formatIPv6(Addresses.parseIPv6("1:0:0:1:0:0:0:0")));
+		assertNull(Addresses.parseIPv6("1::2::3"));
+		assertNull(Addresses.parseIPv6("10.0.0.1"));
+		assertNull(Addresses.parseIPv6("1:2:3:4:5:6:7"));
+	}
+
+	@Test
+	public void testHostHashCode() {
+		Set<Host> hosts = new HashSet<>();
+		hosts.add(new Host("10.0.0.1", null, null));
+		hosts.add(new Host("10.0.0.1", null, null));
+		hosts.add(new Host("10.0.0.1", "a", null));
+		assertEquals(2, hosts.size());
+	}
+}
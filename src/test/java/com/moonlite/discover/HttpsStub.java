@@ -0,0 +1,117 @@
+package com.moonlite.discover;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+
+import com.sun.net.httpserver.BasicAuthenticator;
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+
+/***
+ * A stand-in for the https server of an ASA: /admin/config gives the body, to user "cisco" with password
+ * "cisco", after delayMillis. The key is from test-keystore.p12, made by
+ *     keytool -genkeypair -alias localhost -keyalg RSA -storetype PKCS12 -keystore test-keystore.p12
+ *         -storepass changeit -dname "CN=localhost" -ext SAN=dns:localhost,ip:127.0.0.1
+ */
+class HttpsStub implements AutoCloseable {
+	final HttpsServer server;
+	final ExecutorService executor = Executors.newCachedThreadPool();
+	// the client ports seen: one per connection
+	final Set<Integer> connections = ConcurrentHashMap.newKeySet();
+	final AtomicInteger requests = new AtomicInteger();
+	final AtomicInteger unauthorized = new AtomicInteger();
+	final AtomicInteger running = new AtomicInteger();
+	final AtomicInteger maxRunning = new AtomicInteger();
+	volatile String body = "";
+	volatile long delayMillis = 0;
+
+	HttpsStub () throws Exception {
+		KeyStore keyStore = KeyStore.getInstance("PKCS12");
+		try (InputStream in = getClass().getResourceAsStream("test-keystore.p12")) {
+			keyStore.load(in, "changeit".toCharArray());
+		}
+		KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+		kmf.init(keyStore, "changeit".toCharArray());
+		SSLContext sslContext = SSLContext.getInstance("TLS");
+		sslContext.init(kmf.getKeyManagers(), null, null);
+
+		server = HttpsServer.create(new InetSocketAddress("127.0.0.1", 0), 100);
+		server.setHttpsConfigurator(new HttpsConfigurator(sslContext));
+		server.setExecutor(executor);
+		HttpContext context = server.createContext("/admin/config", this::handle);
+		context.getFilters().add(new Filter() {
+			@Override
+			public void doFilter (HttpExchange exchange, Chain chain) throws IOException {
+				connections.add(exchange.getRemoteAddress().getPort());
+				requests.incrementAndGet();
+				if (exchange.getRequestHeaders().getFirst("Authorization") == null) {
+					unauthorized.incrementAndGet();
+				}
+				chain.doFilter(exchange);
+			}
+
+			@Override
+			public String description () {
+				return "counts";
+			}
+		});
+		context.setAuthenticator(new BasicAuthenticator("asa") {
+			@Override
+			public boolean checkCredentials (String user, String password) {
+				return user.equals("cisco") && password.equals("cisco");
+			}
+		});
+		server.start();
+	}
+
+	String url () {
+		return "https://127.0.0.1:" + server.getAddress().getPort() + "/admin/config";
+	}
+
+	/**
+	 * @return String, the address of the device, as ASA takes it
+	 */
+	String address () {
+		return "127.0.0.1:" + server.getAddress().getPort();
+	}
+
+	private void handle (HttpExchange exchange) throws IOException {
+		maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+		try {
+			if (delayMillis > 0) {
+				Thread.sleep(delayMillis);
+			}
+			byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+			exchange.sendResponseHeaders(200, bytes.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(bytes);
+			}
+		} catch (InterruptedException e) {
+			exchange.sendResponseHeaders(500, -1);
+		} finally {
+			running.decrementAndGet();
+			exchange.close();
+		}
+	}
+
+	@Override
+	public void close () {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+}
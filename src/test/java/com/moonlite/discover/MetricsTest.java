@@ -0,0 +1,104 @@
+package com.moonlite.discover;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+public class MetricsTest {
+
+	private String getFilePath(String fileName) {
+		ClassLoader classLoader = getClass().getClassLoader();
+		String dirPath = getClass().getPackage().getName().replace('.', '/');
+		return classLoader.getResource(dirPath + "/" + fileName).getFile();
+	}
+
+	@Test
+	public void testBuckets() {
+		// each bucket starts where the previous one ends
+		long next = 0;
+		for (int i = 0; i < 300; i++) {
+			assertEquals(i, Metrics.Histogram.index(next));
+			long highest = Metrics.Histogram.highest(i);
+			assertEquals(i, Metrics.Histogram.index(highest));
+			// at most 1/16 wide
+			assertTrue(highest - next <= next / 16);
+			next = highest + 1;
+		}
+		assertTrue(Metrics.Histogram.index(Long.MAX_VALUE) < 960);
+	}
+
+	@Test
+	public void testHistogram() {
+		Metrics.Histogram h = new Metrics.Histogram();
+		assertEquals(0, h.getPercentile(99));
+		for (long v = 1; v <= 1000; v++) {
+			h.record(v * 1000);
+		}
+		assertEquals(1000, h.getCount());
+		assertEquals(1000000, h.getMax());
+		assertEquals(500500, h.getMean(), 0.001);
+		assertEquals(500000, h.getPercentile(50), 500000 / 16);
+		assertEquals(990000, h.getPercentile(99), 990000 / 16);
+		assertEquals(1000000, h.getPercentile(100));
+		assertEquals(1000, h.getPercentile(0), 1000 / 16);
+	}
+
+	@Test
+	public void testConcurrentCounts() throws Exception {
+		Metrics.Counter counter = Metrics.counter("test.concurrent");
+		Metrics.Histogram h = Metrics.histogram("test.concurrent.latency");
+		List<Thread> threads = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			Thread t = new Thread(() -> {
+				for (int j = 0; j < 10000; j++) {
+					counter.increment();
+					h.record(j);
+				}
+			});
+			threads.add(t);
+			t.start();
+		}
+		for (Thread t: threads) {
+			t.join();
+		}
+		assertEquals(80000, counter.get());
+		assertEquals(80000, h.getCount());
+		assertEquals(9999, h.getMax());
+		assertSame(counter, Metrics.counter("test.concurrent"));
+	}
+
+	@Test
+	public void testInstrumentation() throws Exception {
+		long parses = Metrics.histogram("nmap.parse.dom").getCount();
+		new NMap().readXMLFile(getFilePath("sample-nmap.xml"));
+		assertEquals(parses + 1, Metrics.histogram("nmap.parse.dom").getCount());
+
+		long configurations = Metrics.histogram("asa.configuration").getCount();
+		new ASA.Configuration("interface GigabitEthernet0/0\n nameif inside", "10.0.0.0/24");
+		assertEquals(configurations + 1, Metrics.histogram("asa.configuration").getCount());
+
+		String dump = Metrics.dump();
+		assertTrue(dump, dump.contains("\nnmap.parse.dom count="));
+		assertTrue(dump, dump.contains(" ms\n"));
+	}
+
+	@Test
+	public void testJmx() throws Exception {
+		Metrics.counter("test.jmx").add(3);
+		Metrics.histogram("test.jmx.latency").record(2000000);
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(Metrics.OBJECT_NAME);
+		assertEquals(3L, server.getAttribute(name, "test.jmx"));
+		assertEquals(1L, server.getAttribute(name, "test.jmx.latency.count"));
+		assertEquals(2.0, (Double) server.getAttribute(name, "test.jmx.latency.max"), 0.001);
+		assertTrue(server.getMBeanInfo(name).getAttributes().length >= 7);
+		assertEquals(Metrics.dump(), server.invoke(name, "dump", null, null));
+	}
+}
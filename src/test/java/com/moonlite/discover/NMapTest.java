@@ -2,9 +2,23 @@ package com.moonlite.discover;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
 
 import org.jdom2.JDOMException;
 import org.junit.Ignore;
@@ -57,4 +71,186 @@ public class NMapTest {
 			fail("Fails to read the file");
 		}
 	}
+
+	@Test
+	public void testReadXMLFileWithStAX() {
+		NMapStAX nmap = new NMapStAX();
+		String fileName = getFilePath("sample-nmap.xml");
+		try {
+			Host[] hosts = nmap.readXMLFile(fileName);
+			Host[] expecteds = {
+					new Host("172.23.204.252", "asav", "Cisco Adaptive Security Appliance (PIX OS 8.4)"),
+					new Host("172.23.204.155", "my-f1", "Cisco Adaptive Security Appliance (PIX OS 8.4)")
+				};
+			assertArrayEquals(expecteds, hosts);
+		} catch (IOException | XMLStreamException e) {
+			fail("Fails to read the file");
+		}
+	}
+
+	@Test
+	public void testStAXMatchesDOM() {
+		String[] files = {"sample-nmap.xml", "belize.cisco.com.xml", "www.microsoft.com.xml"};
+		try {
+			for (String file: files) {
+				String fileName = getFilePath(file);
+				assertSameHosts(file, new NMap().readXMLFile(fileName), new NMapStAX().readXMLFile(fileName));
+			}
+		} catch (ParserConfigurationException | SAXException | IOException | XMLStreamException e) {
+			e.printStackTrace();
+			fail("Fails to read the file");
+		}
+	}
+
+	@Test
+	/***
+	 * The stdout of "cat" stands for the stdout of "nmap -oX -": it is parsed as it comes, and the tee
+	 * gets the raw xml.
+	 */
+	public void testReadXMLFromProcess() throws Exception {
+		for (String file: new String[] {"sample-nmap.xml", "www.microsoft.com.xml"}) {
+			String fileName = getFilePath(file);
+			List<Host> dom = new ArrayList<>();
+			List<Host> jdom = new ArrayList<>();
+			ByteArrayOutputStream raw = new ByteArrayOutputStream();
+			try (ProcessRunner.Running cat = new ProcessRunner().start("cat", fileName)) {
+				new NMap().readXML(ProcessRunner.tee(cat.getStdOut(), raw), dom::add);
+				assertEquals(0, cat.waitFor().getExitCode());
+			}
+			try (ProcessRunner.Running cat = new ProcessRunner().start("cat", fileName)) {
+				new NMapJDOM().readXML(cat.getStdOut(), jdom::add);
+				assertEquals(0, cat.waitFor().getExitCode());
+			}
+			Host[] expected = new NMap().readXMLFile(fileName);
+			assertArrayEquals(file, expected, dom.toArray(new Host[0]));
+			assertArrayEquals(file, expected, jdom.toArray(new Host[0]));
+			assertArrayEquals(file, Files.readAllBytes(new File(fileName).toPath()), raw.toByteArray());
+		}
+	}
+
+	@Test
+	/***
+	 * NMapStAX runs the command with ProcessRunner: a failure gives the exit code, and at the timeout
+	 * the command is killed.
+	 */
+	public void testRunWithStAX() throws Exception {
+		String fileName = getFilePath("sample-nmap.xml");
+		List<Host> hosts = new ArrayList<>();
+		long failures = Metrics.counter("nmap.exec.failures").get();
+		assertEquals(0, new NMapStAX().run(new String[] {"cat", fileName}, hosts::add));
+		assertArrayEquals(new NMap().readXMLFile(fileName), hosts.toArray(new Host[0]));
+
+		assertEquals(3, new NMapStAX().run(new String[] {"sh", "-c", "echo 'needs root' >&2; exit 3"}, hosts::add));
+		long start = System.currentTimeMillis();
+		assertEquals(-1, new NMapStAX(300).run(new String[] {"sh", "-c", "echo '<nmaprun>'; sleep 10"}, hosts::add));
+		assertTrue(System.currentTimeMillis() - start < 5000);
+		assertEquals(failures + 2, Metrics.counter("nmap.exec.failures").get());
+	}
+
+	@Test
+	/***
+	 * runCommand leaves no nmap output behind in the temp directory, whether nmap is there or not.
+	 */
+	public void testRunCommandLeavesNoFile() throws Exception {
+		File tmp = new File(System.getProperty("java.io.tmpdir"));
+		List<String> before = Arrays.asList(tmp.list((dir, name) -> name.startsWith("nmap")));
+		for (Discover nmap: new Discover[] {new NMapStAX("-sn"), new NMapMapped()}) {
+			nmap.discover("127.0.0.1");
+		}
+		List<String> after = Arrays.asList(tmp.list((dir, name) -> name.startsWith("nmap")));
+		assertTrue(after.toString(), before.containsAll(after));
+	}
+
+	@Test
+	/***
+	 * Each host must reach the consumer while the rest of the document is still to come,
+	 * the way nmap -oX - writes it while scanning.
+	 */
+	public void testReadXMLIncrementallyWithStAX() throws Exception {
+		PipedOutputStream nmapOut = new PipedOutputStream();
+		PipedInputStream in = new PipedInputStream(nmapOut);
+		BlockingQueue<Host> hosts = new LinkedBlockingQueue<>();
+		Thread reader = new Thread(() -> {
+			try {
+				new NMapStAX().readXML(in, hosts::add);
+			} catch (XMLStreamException e) {
+				e.printStackTrace();
+			}
+		});
+		reader.start();
+
+		write(nmapOut, "<?xml version=\"1.0\"?>\n<!DOCTYPE nmaprun>\n<nmaprun scanner=\"nmap\">\n");
+		write(nmapOut, "<host><address addr=\"10.0.0.1\" addrtype=\"ipv4\" /><hostnames>" +
+				"<hostname name=\"one\" type=\"PTR\" /></hostnames></host>\n");
+		Host first = hosts.poll(10, TimeUnit.SECONDS);
+		assertNotNull("First host is passed before the document ends", first);
+		assertEquals("10.0.0.1", first.address);
+		assertEquals("one", first.name);
+
+		write(nmapOut, "<host><address addr=\"10.0.0.2\" addrtype=\"ipv4\" /><hostnames>" +
+				"</hostnames></host>\n</nmaprun>\n");
+		nmapOut.close();
+		reader.join(10000);
+		Host second = hosts.poll();
+		assertEquals("10.0.0.2", second.address);
+		assertNull(second.name);
+		assertNull(second.os);
+	}
+
+	private static void write(PipedOutputStream out, String xml) throws IOException {
+		out.write(xml.getBytes(StandardCharsets.UTF_8));
+		out.flush();
+	}
+
+	@Test
+	public void testMappedMatchesDOM() {
+		String[] files = {"sample-nmap.xml", "belize.cisco.com.xml", "www.microsoft.com.xml"};
+		try {
+			for (String file: files) {
+				String fileName = getFilePath(file);
+				assertSameHosts(file, new NMap().readXMLFile(fileName), new NMapMapped().readXMLFile(fileName));
+			}
+		} catch (ParserConfigurationException | SAXException | IOException e) {
+			e.printStackTrace();
+			fail("Fails to read the file");
+		}
+	}
+
+	@Test
+	/***
+	 * Fields are decoded on demand, with entity references and white spaces handled as in DOM.
+	 */
+	public void testMappedFields() throws IOException {
+		File file = File.createTempFile("nmap", ".xml");
+		file.deleteOnExit();
+		String xml = "<?xml version=\"1.0\"?>\n<!DOCTYPE nmaprun>\n<!-- <host> in a comment -->\n<nmaprun>\n" +
+				"<hosthint><address addr=\"10.0.0.9\" addrtype=\"ipv4\"/></hosthint>\n" +
+				"<host starttime=\"1\"><address addrtype=\"ipv4\" addr=\" 10.0.0.1 \"/>" +
+				"<hostnames><hostname type='PTR' name='a&amp;b'/></hostnames>" +
+				"<os><osmatch accuracy=\"100\" name=\"Linux\n2.6 &lt;x&gt;\"/></os></host>\n" +
+				"<host><address addr=\"10.0.0.2\"/><hostnames></hostnames><os></os></host>\n</nmaprun>\n";
+		Files.write(file.toPath(), xml.getBytes(StandardCharsets.UTF_8));
+
+		NMapMapped.MappedHosts hosts = new NMapMapped().map(file.getAbsolutePath());
+		assertEquals(2, hosts.size());
+		assertEquals("10.0.0.2", hosts.getAddress(1));
+		assertEquals("10.0.0.1", hosts.getAddress(0));
+		assertEquals("a&b", hosts.getName(0));
+		assertEquals("Linux 2.6 <x>", hosts.getOS(0));
+		assertNull(hosts.getName(1));
+		assertNull(hosts.getOS(1));
+	}
+
+	/***
+	 * Compare field by field, as hosts without a hostname have a null name.
+	 */
+	static void assertSameHosts(String message, Host[] expecteds, Host[] actuals) {
+		assertEquals(message, expecteds.length, actuals.length);
+		for (int i = 0; i < expecteds.length; i++) {
+			assertTrue(message + ": host " + i,
+					Objects.equals(expecteds[i].address, actuals[i].address) &&
+					Objects.equals(expecteds[i].name, actuals[i].name) &&
+					Objects.equals(expecteds[i].os, actuals[i].os));
+		}
+	}
 }
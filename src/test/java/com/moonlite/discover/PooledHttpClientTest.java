@@ -0,0 +1,59 @@
+package com.moonlite.discover;
+
+import static org.junit.Assert.*;
+
+import org.apache.http.client.ClientProtocolException;
+import org.junit.Test;
+
+public class PooledHttpClientTest {
+
+	@Test
+	public void testReuse() throws Exception {
+		try (HttpsStub stub = new HttpsStub(); PooledHttpClient client = new PooledHttpClient()) {
+			stub.body = "interface GigabitEthernet0/0\n nameif inside\n";
+			for (int i = 0; i < 5; i++) {
+				assertEquals(stub.body, client.get(stub.url(), "cisco", "cisco"));
+			}
+			assertEquals(5, stub.requests.get());
+			// one connection for all the requests, with the credentials sent up front
+			assertEquals(1, stub.connections.size());
+			assertEquals(0, stub.unauthorized.get());
+			assertEquals(1, client.getStats().getAvailable());
+			assertEquals(0, client.getStats().getLeased());
+
+			// a new client per request connects each time
+			for (int i = 0; i < 3; i++) {
+				new ApacheHttpClient().get(stub.url(), "cisco", "cisco");
+			}
+			assertEquals(4, stub.connections.size());
+		}
+	}
+
+	@Test
+	public void testCredentials() throws Exception {
+		try (HttpsStub stub = new HttpsStub(); PooledHttpClient client = new PooledHttpClient()) {
+			stub.body = "ok";
+			try {
+				client.get(stub.url(), "cisco", "wrong");
+				fail("401 expected");
+			} catch (ClientProtocolException e) {
+				assertTrue(e.getMessage(), e.getMessage().contains("401"));
+			}
+			// the password of the device changed
+			assertEquals("ok", client.get(stub.url(), "cisco", "cisco"));
+			assertEquals(0, client.getStats().getLeased());
+		}
+	}
+
+	@Test
+	public void testReader() throws Exception {
+		try (HttpsStub stub = new HttpsStub(); PooledHttpClient client = new PooledHttpClient()) {
+			stub.body = "a\nb\nc\n";
+			// the reader stops early: the rest is consumed, and the connection is reused
+			int first = client.get(stub.url(), "cisco", "cisco", entity -> entity.getContent().read());
+			assertEquals('a', first);
+			assertEquals(stub.body, client.get(stub.url(), "cisco", "cisco"));
+			assertEquals(1, stub.connections.size());
+		}
+	}
+}
@@ -0,0 +1,159 @@
+package com.moonlite.discover;
+
+import static org.junit.Assert.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+public class PortScanTest {
+
+	private static int closedPort() throws Exception {
+		try (ServerSocket s = new ServerSocket(0)) {
+			return s.getLocalPort();
+		}
+	}
+
+	@Test
+	public void testParsePorts() {
+		int[] ports = PortScan.parsePorts(PortScan.FAST_PORTS);
+		assertEquals(100, ports.length);
+		assertEquals(7, ports[0]);
+		assertEquals(49157, ports[99]);
+		assertArrayEquals(new int[] {21, 22, 23, 80}, PortScan.parsePorts("21-23, 80"));
+		try {
+			PortScan.parsePorts("23-21");
+			fail();
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	@Test
+	public void testOpenPorts() throws Exception {
+		InetAddress local = InetAddress.getByName("127.0.0.1");
+		try (ServerSocket a = new ServerSocket(0, 50, local); ServerSocket b = new ServerSocket(0, 50, local)) {
+			int[] ports = {closedPort(), b.getLocalPort(), closedPort(), a.getLocalPort()};
+			PortScan scan = new PortScan(ports, 1000, 1, 2);
+			Host[] hosts = scan.discover("127.0.0.1 127.0.0.2");
+			assertEquals(2, hosts.length);
+			assertEquals(new Host("127.0.0.1", null, null), hosts[0]);
+			int[] expected = {Math.min(a.getLocalPort(), b.getLocalPort()), Math.max(a.getLocalPort(), b.getLocalPort())};
+			assertArrayEquals(expected, ((ScannedHost) hosts[0]).getOpenPorts());
+			// 127.0.0.2 refuses every port: it is up, with no open port
+			assertEquals("127.0.0.2", hosts[1].address);
+			assertEquals(0, ((ScannedHost) hosts[1]).getOpenPorts().length);
+		}
+	}
+
+	@Test
+	public void testTimeoutAndRetry() throws Exception {
+		// a listener whose backlog is full drops the SYNs, so probes to it time out
+		InetAddress local = InetAddress.getByName("127.0.0.1");
+		List<SocketChannel> backlog = new ArrayList<>();
+		try (ServerSocket full = new ServerSocket(0, 1, local); ServerSocket open = new ServerSocket(0, 50, local)) {
+			for (int i = 0; i < 8; i++) {
+				SocketChannel channel = SocketChannel.open();
+				channel.configureBlocking(false);
+				channel.connect(new InetSocketAddress(local, full.getLocalPort()));
+				backlog.add(channel);
+			}
+			long start = System.currentTimeMillis();
+			ScannedHost[] hosts = new PortScan(new int[] {full.getLocalPort(), open.getLocalPort()}, 200, 2, 16)
+					.scan("127.0.0.1");
+			long elapsed = System.currentTimeMillis() - start;
+			assertEquals(1, hosts.length);
+			assertArrayEquals(new int[] {open.getLocalPort()}, hosts[0].getOpenPorts());
+			// the first probe and 2 retransmits time out
+			assertTrue(String.valueOf(elapsed), elapsed >= 550 && elapsed < 5000);
+
+			// a host that answers nothing is down
+			assertEquals(0, new PortScan(new int[] {full.getLocalPort()}, 200, 0, 16).scan("127.0.0.1").length);
+		} finally {
+			for (SocketChannel channel: backlog) {
+				channel.close();
+			}
+		}
+	}
+
+	@Test
+	public void testLikelyPortsFirst() throws Exception {
+		assertArrayEquals(new int[] {80, 443, 22, 7, 9, 8}, PortScan.byLikelihood(new int[] {7, 8, 9, 22, 80, 443}));
+
+		// two hosts behind a firewall that drops the ports below 80, in numeric order the first ones
+		// probed: 127.0.0.7 with only 80 open, and 127.0.0.8 with only 22 open
+		int[] ports = {7, 9, 13, 21, 22, 23, 25, 26, 37, 53, 79, 80, 443};
+		List<Closeable> sockets = new ArrayList<>();
+		try {
+			for (String address: new String[] {"127.0.0.7", "127.0.0.8"}) {
+				int open = address.equals("127.0.0.7") ? 80 : 22;
+				InetAddress local = InetAddress.getByName(address);
+				for (int port: ports) {
+					ServerSocket server;
+					try {
+						server = new ServerSocket(port, port == open ? 50 : 1, local);
+					} catch (IOException e) {
+						Assume.assumeNoException("Cannot listen on a port below 1024", e);
+						return;
+					}
+					sockets.add(server);
+					for (int i = 0; port != open && i < 8; i++) {
+						// a full backlog drops the SYNs
+						SocketChannel channel = SocketChannel.open();
+						channel.configureBlocking(false);
+						channel.connect(new InetSocketAddress(local, port));
+						sockets.add(channel);
+					}
+				}
+			}
+			ScannedHost[] hosts = new PortScan(ports, 200, 0, 16).scan("127.0.0.7 127.0.0.8");
+			assertEquals(2, hosts.length);
+			assertArrayEquals(new int[] {80}, hosts[0].getOpenPorts());
+			assertArrayEquals(new int[] {22}, hosts[1].getOpenPorts());
+		} finally {
+			for (Closeable socket: sockets) {
+				socket.close();
+			}
+		}
+	}
+
+	@Test
+	public void testFileDescriptorLimit() throws Exception {
+		// 2048 probes in flight do not fit in 256 file descriptors: the probes wait for sockets, rather
+		// than mark their hosts as down
+		InetAddress local = InetAddress.getByName("127.0.0.1");
+		try (ServerSocket server = new ServerSocket(0, 50, local)) {
+			String ports = closedPort() + "," + server.getLocalPort() + "," + closedPort();
+			assertEquals("1024 " + server.getLocalPort(),
+					TcpSweepTest.runLimited(256, PortScanTest.class, "127.0.0.0/22", ports));
+		}
+	}
+
+	/***
+	 * For testFileDescriptorLimit: the number of hosts found on a network, 2048 probes at a time, and
+	 * the open ports of 127.0.0.1.
+	 * @param args String[] network ports
+	 */
+	public static void main (String[] args) throws Exception {
+		int[] ports = PortScan.parsePorts(args[1]);
+		// see TcpSweepTest.main
+		new PortScan(ports, 1000, 0, 1).scan("127.0.0.2");
+		ScannedHost[] hosts = new PortScan(ports, 1000, 0, 2048).scan(args[0]);
+		StringBuilder line = new StringBuilder().append(hosts.length);
+		for (ScannedHost host: hosts) {
+			if (host.address.equals("127.0.0.1")) {
+				for (int port: host.getOpenPorts()) {
+					line.append(' ').append(port);
+				}
+			}
+		}
+		System.out.println(line);
+	}
+}
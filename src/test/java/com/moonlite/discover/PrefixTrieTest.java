@@ -0,0 +1,108 @@
+package com.moonlite.discover;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PrefixTrieTest {
+
+	private String getFilePath(String fileName) {
+		ClassLoader classLoader = getClass().getClassLoader();
+		String dirPath = getClass().getPackage().getName().replace('.', '/');
+		return classLoader.getResource(dirPath + "/" + fileName).getFile();
+	}
+
+	@Test
+	public void testLongestMatch() {
+		PrefixTrie<String> routes = new PrefixTrie<>();
+		routes.put("0.0.0.0/0", "default");
+		routes.put("10.0.0.0/8", "ten");
+		routes.put("10.28.0.0/16", "belize");
+		routes.put("2001:db8::/32", "doc");
+		assertEquals("belize", routes.longestMatch("10.28.29.96"));
+		assertEquals("ten", routes.longestMatch("10.29.0.1"));
+		assertEquals("default", routes.longestMatch("192.168.1.1"));
+		assertEquals("doc", routes.longestMatch("2001:db8::1"));
+		assertNull(routes.longestMatch("fe80::1"));
+		assertEquals("ten", routes.get("10.1.2.3/8"));
+		assertTrue(routes.containsKey("10.28.0.0/16"));
+		assertFalse(routes.containsKey("10.28.0.0/24"));
+		assertEquals(4, routes.size());
+	}
+
+	@Test
+	public void testValuesIn() {
+		PrefixTrie<String> trie = new PrefixTrie<>();
+		for (String address: new String[] {"10.0.1.2", "10.0.0.9", "10.0.1.1", "10.1.0.1", "::1"}) {
+			trie.put(address, address);
+		}
+		trie.put("10.0.0.0/16", "net");
+		assertEquals(Arrays.asList("net", "10.0.0.9", "10.0.1.1", "10.0.1.2"), trie.valuesIn("10.0.0.0/16"));
+		assertEquals(Arrays.asList("::1"), trie.valuesIn("::/0"));
+		assertTrue(trie.valuesIn("10.2.0.0/16").isEmpty());
+		assertTrue(trie.containsAnyIn("10.1.0.0/24"));
+		assertFalse(trie.containsAnyIn("10.1.1.0/24"));
+	}
+
+	@Test
+	public void testAgainstScan() {
+		// prefixes that branch and nest at all kinds of bits, checked against a scan of all of them
+		Random random = new Random(7);
+		PrefixTrie<String> trie = new PrefixTrie<>();
+		Map<Cidr, String> all = new LinkedHashMap<>();
+		for (int i = 0; i < 2000; i++) {
+			int length = 8 + random.nextInt(25);
+			int address = (0x0a000000 | random.nextInt(1 << 16) << 8) & (int) (0xffffffffL << (32 - length));
+			String cidr = Addresses.formatIPv4(address) + "/" + length;
+			trie.put(cidr, cidr);
+			all.put(Cidr.parse(cidr), cidr);
+		}
+		assertEquals(all.size(), trie.size());
+		for (int i = 0; i < 2000; i++) {
+			int address = 0x0a000000 | random.nextInt(1 << 24);
+			Cidr longest = null;
+			for (Cidr cidr: all.keySet()) {
+				if (cidr.contains(address) && (longest == null || cidr.size() < longest.size())) {
+					longest = cidr;
+				}
+			}
+			String text = Addresses.formatIPv4(address);
+			assertEquals(text, longest == null ? null : all.get(longest), trie.longestMatch(text));
+		}
+		for (Cidr range: new ArrayList<>(all.keySet()).subList(0, 100)) {
+			String cidr = all.get(range);
+			assertEquals(cidr, trie.get(cidr));
+			List<String> within = trie.valuesIn(cidr);
+			long expected = all.keySet().stream()
+					.filter(c -> range.contains(c.address(0)) && c.size() <= range.size())
+					.count();
+			assertEquals(cidr, expected, within.size());
+			assertEquals(cidr, within.get(0));
+		}
+	}
+
+	@Test
+	public void testHostIndex() throws Exception {
+		Host[] hosts = new NMapStAX().readXMLFile(getFilePath("belize.cisco.com.xml"));
+		HostIndex index = HostIndex.of(hosts);
+		assertEquals(hosts.length, index.size());
+
+		Host[] inRange = index.hostsIn("10.28.29.64/27");
+		long expected = Arrays.stream(hosts)
+				.filter(h -> Cidr.parse("10.28.29.64/27").contains(Addresses.parseIPv4(h.address)))
+				.count();
+		assertEquals(expected, inRange.length);
+		for (int i = 1; i < inRange.length; i++) {
+			assertTrue(Addresses.parseIPv4(inRange[i - 1].address) < Addresses.parseIPv4(inRange[i].address));
+		}
+		assertEquals(hosts[0], index.get(hosts[0].address));
+		assertFalse(index.containsAnyIn("192.168.0.0/16"));
+	}
+}
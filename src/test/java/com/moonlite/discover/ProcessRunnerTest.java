@@ -0,0 +1,88 @@
+package com.moonlite.discover;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ProcessRunnerTest {
+
+	@Test
+	public void testRun() throws Exception {
+		ProcessRunner.Result result = new ProcessRunner().run("echo", "hello");
+		assertEquals(0, result.getExitCode());
+		assertFalse(result.isTimedOut());
+		assertEquals("hello\n", result.getStdOut().toString());
+		assertEquals("", result.getStdErr().toString());
+
+		result = new ProcessRunner().run("ls", "/junk");
+		assertNotEquals(0, result.getExitCode());
+		assertTrue(result.getStdErr().toString(), result.getStdErr().toString().contains("/junk"));
+	}
+
+	@Test
+	public void testLargeOutput() throws Exception {
+		// far more than a pipe holds, on both streams, which deadlocks Shell.run
+		String script = "head -c 3000000 /dev/zero; head -c 3000000 /dev/zero >&2";
+		ProcessRunner.Result result = new ProcessRunner(10000, 1000).run("sh", "-c", script);
+		assertEquals(0, result.getExitCode());
+		assertEquals(1000, result.getStdOut().toByteArray().length);
+		assertTrue(result.getStdOut().isTruncated());
+		assertTrue(result.getStdErr().isTruncated());
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		result = new ProcessRunner().run(new String[] {"sh", "-c", script}, out, null);
+		assertEquals(3000000, out.size());
+		assertNull(result.getStdOut());
+	}
+
+	@Test
+	public void testLines() throws Exception {
+		List<String> lines = new ArrayList<>();
+		new ProcessRunner().run(new String[] {"printf", "a\\nb\\r\\n\\nlast"}, ProcessRunner.lines(lines::add), null);
+		assertEquals("[a, b, , last]", lines.toString());
+	}
+
+	@Test
+	public void testTimeout() throws Exception {
+		// the child of sh holds stdout open: it must be killed too
+		long start = System.currentTimeMillis();
+		ProcessRunner.Result result = new ProcessRunner(300, 1000).run("sh", "-c", "sleep 30; echo done");
+		assertTrue(result.isTimedOut());
+		assertEquals(-1, result.getExitCode());
+		assertEquals("", result.getStdOut().toString());
+		assertTrue(System.currentTimeMillis() - start < 5000);
+	}
+
+	@Test
+	public void testStart() throws Exception {
+		try (ProcessRunner.Running running = new ProcessRunner(10000, 100).start("sh", "-c",
+				"echo out; echo err >&2; head -c 1000000 /dev/zero")) {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(running.getStdOut()));
+			assertEquals("out", reader.readLine());
+			// the rest of stdout is drained by waitFor
+			ProcessRunner.Result result = running.waitFor();
+			assertEquals(0, result.getExitCode());
+			assertEquals("err\n", result.getStdErr().toString());
+		}
+
+		// close kills a command whose output is not read to the end
+		ProcessRunner.Running running = new ProcessRunner().start("sleep", "30");
+		running.close();
+		assertNotEquals(0, running.waitFor().getExitCode());
+
+		running = new ProcessRunner(200, 100).start("sleep", "30");
+		assertTrue(running.waitFor().isTimedOut());
+	}
+
+	@Test(expected = IOException.class)
+	public void testNoCommand() throws Exception {
+		new ProcessRunner().run("no-such-command");
+	}
+}
@@ -0,0 +1,154 @@
+package com.moonlite.discover;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class ReverseDnsTest {
+
+	/***
+	 * Names the addresses ending in an even number, after a delay.
+	 */
+	private static class StubResolver implements ReverseDns.Resolver {
+		final List<String> queries = new CopyOnWriteArrayList<>();
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+
+		@Override
+		public String lookup(String address) throws IOException {
+			queries.add(address);
+			maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException e) {
+				throw new IOException(e);
+			} finally {
+				running.decrementAndGet();
+			}
+			if (address.endsWith("99")) {
+				throw new IOException("SERVFAIL");
+			}
+			int last = Integer.parseInt(address.substring(address.lastIndexOf('.') + 1));
+			return last % 2 == 0 ? "host-" + last + ".example.com" : null;
+		}
+	}
+
+	@Test
+	public void testResolve() {
+		StubResolver stub = new StubResolver();
+		ReverseDns dns = new ReverseDns(stub, 4, 60000, 60000);
+		try {
+			Host[] hosts = new Host[40];
+			for (int i = 0; i < hosts.length; i++) {
+				hosts[i] = new Host("10.0.0." + (i % 20), null, "Linux");
+			}
+			hosts[1] = new Host("10.0.0.1", "known", null);
+			long start = System.currentTimeMillis();
+			Host[] result = dns.resolve(hosts);
+			// 19 distinct addresses to look up, 4 at a time
+			assertTrue(System.currentTimeMillis() - start < 19 * 50);
+			assertEquals(4, stub.maxRunning.get());
+			assertEquals(20, stub.queries.size());
+
+			assertEquals(new Host("10.0.0.0", "host-0.example.com", "Linux"), result[0]);
+			assertSame(hosts[1], result[1]);
+			assertEquals(new Host("10.0.0.3", null, "Linux"), result[3]);
+			assertEquals(new Host("10.0.0.4", "host-4.example.com", "Linux"), result[24]);
+
+			// both names and misses are cached
+			dns.resolve(hosts);
+			assertEquals(20, stub.queries.size());
+			assertEquals("host-2.example.com", dns.lookup("10.0.0.2"));
+			assertNull(dns.lookup("10.0.0.99"));
+			assertNull(dns.lookup("10.0.0.99"));
+			assertEquals(21, stub.queries.size());
+		} finally {
+			dns.shutdown();
+		}
+	}
+
+	@Test
+	public void testSystemResolver() throws IOException {
+		// documentation addresses, which have no names; the IPv6 ones are not given back as written
+		assertNull(ReverseDns.SYSTEM.lookup("192.0.2.1"));
+		assertNull(ReverseDns.SYSTEM.lookup("2001:db8::1"));
+		assertNull(ReverseDns.SYSTEM.lookup("2001:DB8:0:0:0:0:0:2"));
+	}
+
+	@Test
+	public void testTtl() throws Exception {
+		Map<String, AtomicInteger> counts = new ConcurrentHashMap<>();
+		ReverseDns.Resolver resolver = address -> {
+			counts.computeIfAbsent(address, a -> new AtomicInteger()).incrementAndGet();
+			return address.equals("10.0.0.1") ? "one" : null;
+		};
+		ReverseDns dns = new ReverseDns(resolver, 2, 60000, 50);
+		try {
+			dns.lookup("10.0.0.1");
+			dns.lookup("10.0.0.2");
+			Thread.sleep(100);
+			dns.lookup("10.0.0.1");
+			dns.lookup("10.0.0.2");
+			assertEquals(1, counts.get("10.0.0.1").get());
+			// the negative entry expired
+			assertEquals(2, counts.get("10.0.0.2").get());
+			assertEquals(1, dns.getHits());
+			assertEquals(3, dns.getMisses());
+		} finally {
+			dns.shutdown();
+		}
+	}
+
+	@Test
+	public void testMaxEntries() throws Exception {
+		AtomicInteger queries = new AtomicInteger();
+		ReverseDns dns = new ReverseDns(address -> {
+			queries.incrementAndGet();
+			return address.endsWith(".1") ? "one" : null;
+		}, 1, 60000, 50, 3);
+		try {
+			dns.lookup("10.0.0.1");
+			dns.lookup("10.0.0.2");
+			dns.lookup("10.0.0.3");
+			// the least recently used is dropped, not the one just looked up again
+			dns.lookup("10.0.0.1");
+			dns.lookup("10.0.0.4");
+			assertEquals(3, dns.size());
+			assertEquals(4, queries.get());
+			dns.lookup("10.0.0.1");
+			assertEquals(4, queries.get());
+			dns.lookup("10.0.0.2");
+			assertEquals(5, queries.get());
+
+			// the expired negative entries go first, and the name is kept
+			Thread.sleep(100);
+			dns.lookup("10.0.0.5");
+			assertEquals(2, dns.size());
+			dns.lookup("10.0.0.1");
+			assertEquals(6, queries.get());
+		} finally {
+			dns.shutdown();
+		}
+	}
+
+	@Test
+	public void testStage() {
+		ReverseDns dns = new ReverseDns(address -> "name-" + address, 2, 60000, 60000);
+		try {
+			Discover scan = target -> new Host[] {new ScannedHost("10.0.0.1", null, null, new int[] {22})};
+			Host[] hosts = dns.stage(scan).discover("10.0.0.1");
+			assertEquals("name-10.0.0.1", hosts[0].name);
+			assertArrayEquals(new int[] {22}, ((ScannedHost) hosts[0]).getOpenPorts());
+			assertNull(dns.stage(target -> null).discover("10.0.0.1"));
+		} finally {
+			dns.shutdown();
+		}
+	}
+}
@@ -0,0 +1,117 @@
+package com.moonlite.discover;
+
+import static org.junit.Assert.*;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class ScanCacheTest {
+	private final AtomicInteger scans = new AtomicInteger();
+
+	/***
+	 * A Discover that finds one host per scan, named after the number of scans so far.
+	 */
+	private final Discover counter = target -> {
+		if (((String) target).startsWith("bad")) {
+			return null;
+		}
+		return new Host[] {new Host("10.0.0.1", "scan" + scans.incrementAndGet(), null)};
+	};
+
+	private static final String[] ARGS = {"-F", "-O"};
+
+	@Test
+	public void testHitAndRefresh() {
+		ScanCache cache = new ScanCache(counter, ARGS, 60000, 10, null);
+		assertEquals("scan1", cache.discover("10.0.0.0/24")[0].name);
+		assertEquals("scan1", cache.discover(" 10.0.0.7/24 ")[0].name);
+		assertEquals("scan2", cache.discover("10.0.0.0/24", true)[0].name);
+		assertEquals("scan2", cache.discover("10.0.0.0/24")[0].name);
+		assertNull(cache.discover("bad"));
+		assertNull(cache.discover("bad"));
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void testKey() {
+		ScanCache cache = new ScanCache(counter, ARGS, 60000, 10, null);
+		assertEquals(cache.key("10.28.0.5/16  Host.Example.com"), cache.key("host.example.com 10.28.0.0/16"));
+		assertNotEquals(cache.key("10.28.0.0/16"), cache.key("10.28.0.0/24"));
+		ScanCache other = new ScanCache(counter, new String[] {"-sn"}, 60000, 10, null);
+		assertNotEquals(cache.key("10.28.0.0/16"), other.key("10.28.0.0/16"));
+	}
+
+	@Test
+	public void testTTL() throws InterruptedException {
+		ScanCache cache = new ScanCache(counter, ARGS, 50, 10, null);
+		assertEquals("scan1", cache.discover("10.0.0.0/24")[0].name);
+		Thread.sleep(100);
+		assertEquals("scan2", cache.discover("10.0.0.0/24")[0].name);
+	}
+
+	@Test
+	public void testLRU() {
+		ScanCache cache = new ScanCache(counter, ARGS, 60000, 2, null);
+		cache.discover("10.0.1.0/24");
+		cache.discover("10.0.2.0/24");
+		cache.discover("10.0.1.0/24");
+		cache.discover("10.0.3.0/24"); // evicts 10.0.2.0/24, the least recently used
+		assertEquals(3, scans.get());
+		cache.discover("10.0.1.0/24");
+		assertEquals(3, scans.get());
+		cache.discover("10.0.2.0/24");
+		assertEquals(4, scans.get());
+		assertEquals(2, cache.size());
+	}
+
+	@Test
+	public void testPersistence() throws IOException {
+		File dir = Files.createTempDirectory("scan-cache").toFile();
+		dir.deleteOnExit();
+		ScanCache cache = new ScanCache(counter, ARGS, 60000, 2, dir);
+		cache.discover("10.0.1.0/24");
+		cache.discover("10.0.2.0/24");
+		cache.discover("10.0.3.0/24");
+		assertEquals(2, dir.listFiles().length);
+
+		ScanCache restarted = new ScanCache(counter, ARGS, 60000, 2, dir);
+		assertEquals(2, restarted.size());
+		assertEquals("scan3", restarted.discover("10.0.3.0/24")[0].name);
+		assertNull(restarted.discover("10.0.3.0/24")[0].os);
+		assertEquals(3, scans.get());
+
+		restarted.clear();
+		assertEquals(0, dir.listFiles().length);
+		dir.delete();
+	}
+
+	@Test
+	public void testCorruptedFiles() throws IOException {
+		File dir = Files.createTempDirectory("scan-cache").toFile();
+		dir.deleteOnExit();
+		new ScanCache(counter, ARGS, 60000, 2, dir).discover("10.0.1.0/24");
+		// host counts that are negative, or too large for the file, and a file cut short
+		for (int count: new int[] {-1, Integer.MAX_VALUE, 2}) {
+			try (DataOutputStream out = new DataOutputStream(new FileOutputStream(new File(dir, count + ".scan")))) {
+				out.writeInt(0x4e4d4331);
+				out.writeUTF("10.0.2.0/24|-F -O");
+				out.writeLong(System.currentTimeMillis());
+				out.writeInt(count);
+			}
+		}
+		assertEquals(4, dir.listFiles().length);
+
+		ScanCache restarted = new ScanCache(counter, ARGS, 60000, 2, dir);
+		assertEquals(1, restarted.size());
+		assertEquals(1, dir.listFiles().length);
+		assertEquals("scan1", restarted.discover("10.0.1.0/24")[0].name);
+		restarted.clear();
+		dir.delete();
+	}
+}
@@ -0,0 +1,93 @@
+package com.moonlite.discover;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class ScanDiffTest {
+
+	private String getFilePath(String fileName) {
+		ClassLoader classLoader = getClass().getClassLoader();
+		String dirPath = getClass().getPackage().getName().replace('.', '/');
+		return classLoader.getResource(dirPath + "/" + fileName).getFile();
+	}
+
+	@Test
+	public void testCompare() {
+		Host[] yesterday = {
+				new Host("10.0.0.10", "b", "IOS"),
+				new Host("10.0.0.9", "a", "IOS"),
+				new Host("10.0.0.11", "c", "IOS"),
+				new Host("10.0.0.12", null, "Linux"),
+		};
+		Host[] today = {
+				new Host("10.0.0.12", "d", "Linux"),
+				new Host("10.0.0.9", "a", "IOS"),
+				new Host("10.0.0.13", "e", "IOS"),
+				new Host("10.0.0.10", "b", "NX-OS"),
+		};
+		ScanDiff diff = ScanDiff.compare(yesterday, today);
+		assertEquals(Arrays.asList(new Host("10.0.0.13", "e", "IOS")), diff.getAdded());
+		assertEquals(Arrays.asList(new Host("10.0.0.11", "c", "IOS")), diff.getRemoved());
+		assertEquals(2, diff.getChanged().size());
+		assertEquals("10.0.0.10", diff.getChanged().get(0).after.address);
+		assertEquals("NX-OS", diff.getChanged().get(0).after.os);
+		assertEquals(null, diff.getChanged().get(1).before.name);
+		assertEquals("d", diff.getChanged().get(1).after.name);
+		assertFalse(diff.isEmpty());
+	}
+
+	@Test
+	public void testCompareSameScan() throws Exception {
+		Host[] hosts = new NMapStAX().readXMLFile(getFilePath("www.microsoft.com.xml"));
+		Host[] shuffled = hosts.clone();
+		Collections.reverse(Arrays.asList(shuffled));
+		assertTrue(ScanDiff.compare(hosts, shuffled).isEmpty());
+	}
+
+	@Test
+	public void testAddressOrder() {
+		String[] addresses = {"www.microsoft.com", "::1", "10.0.0.10", "9.0.0.1", "200.0.0.1", "fe80::1"};
+		Host[] hosts = Arrays.stream(addresses).map(a -> new Host(a, null, null)).toArray(Host[]::new);
+		Arrays.sort(hosts, ScanDiff.BY_ADDRESS);
+		String[] sorted = Arrays.stream(hosts).map(h -> h.address).toArray(String[]::new);
+		assertArrayEquals(new String[] {"9.0.0.1", "10.0.0.10", "200.0.0.1", "::1", "fe80::1", "www.microsoft.com"}, sorted);
+	}
+
+	@Test
+	/***
+	 * Only the changed hosts are scanned again, and the result replaces them in the baseline.
+	 */
+	public void testRescan() {
+		Host[] baseline = {
+				new Host("10.0.0.2", "b", "IOS"),
+				new Host("10.0.0.1", "a", "IOS"),
+				new Host("10.0.0.3", "c", "IOS"),
+		};
+		String[] scanned = new String[1];
+		Discover stub = target -> {
+			scanned[0] = (String) target;
+			return new Host[] {new Host("10.0.0.2", "b", "NX-OS"), new Host("10.0.0.4", "d", "IOS")};
+		};
+		Host[] result = ScanDiff.rescan(stub, baseline, Arrays.asList("10.0.0.2", "10.0.0.3", "10.0.0.4"));
+		assertEquals("10.0.0.2 10.0.0.3 10.0.0.4", scanned[0]);
+		Host[] expecteds = {
+				new Host("10.0.0.1", "a", "IOS"),
+				new Host("10.0.0.2", "b", "NX-OS"),
+				new Host("10.0.0.4", "d", "IOS"),
+		};
+		assertArrayEquals(expecteds, result);
+		assertNull(ScanDiff.rescan(target -> null, baseline, Arrays.asList("10.0.0.2")));
+	}
+
+	@Test
+	public void testNMapCommand() {
+		assertArrayEquals(new String[] {"nmap", "-F", "-O", "-oX", "-", "10.0.0.2", "10.0.0.3"},
+				NMapCommand.build("-", " 10.0.0.2  10.0.0.3 "));
+		assertArrayEquals(new String[] {"nmap", "-sn", "-oX", "out.xml", "10.0.0.0/24"},
+				NMapCommand.build("out.xml", "10.0.0.0/24", "-sn"));
+	}
+}
@@ -0,0 +1,69 @@
+package com.moonlite.discover;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class ShardedScanTest {
+
+	@Test
+	public void testShards() {
+		ShardedScan scan = new ShardedScan(target -> null, 24, 4);
+		List<String> shards = scan.shards("10.28.0.0/22 www.microsoft.com/24");
+		assertEquals(Arrays.asList("10.28.0.0/24", "10.28.1.0/24", "10.28.2.0/24", "10.28.3.0/24",
+				"www.microsoft.com/24"), shards);
+	}
+
+	@Test
+	/***
+	 * Hosts of the good shards are merged without duplicates, while the bad shards are reported.
+	 */
+	public void testDiscoverIsolatesFailedShards() {
+		Discover stub = target -> {
+			switch ((String) target) {
+			case "10.28.0.0/24":
+				return new Host[] {new Host("10.28.0.1", "a", "IOS"), new Host("10.28.1.1", "b", "IOS")};
+			case "10.28.1.0/24":
+				return new Host[] {new Host("10.28.1.1", "b", "IOS"), new Host("10.28.1.2", "c", "IOS")};
+			case "10.28.2.0/24":
+				return null;
+			default:
+				throw new IllegalStateException("nmap crashed");
+			}
+		};
+		ShardedScan scan = new ShardedScan(stub, 24, 2);
+		Host[] hosts = scan.discover("10.28.0.0/22");
+		Host[] expecteds = {
+				new Host("10.28.0.1", "a", "IOS"),
+				new Host("10.28.1.1", "b", "IOS"),
+				new Host("10.28.1.2", "c", "IOS"),
+		};
+		assertArrayEquals(expecteds, hosts);
+		assertEquals(Arrays.asList("10.28.2.0/24", "10.28.3.0/24"), scan.getFailedShards());
+	}
+
+	@Test
+	public void testDiscoverBoundsParallelism() {
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger maxRunning = new AtomicInteger();
+		Discover stub = target -> {
+			maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+			try {
+				Thread.sleep(20);
+			} catch (InterruptedException e) {
+				return null;
+			}
+			running.decrementAndGet();
+			return new Host[0];
+		};
+		ShardedScan scan = new ShardedScan(stub, 28, 3);
+		assertEquals(0, scan.discover("10.28.0.0/24").length);
+		assertTrue(maxRunning.get() <= 3);
+		assertEquals(Collections.emptyList(), scan.getFailedShards());
+	}
+}
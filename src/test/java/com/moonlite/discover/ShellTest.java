@@ -2,7 +2,9 @@ package com.moonlite.discover;
 
 import static org.junit.Assert.*;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
 
 import org.junit.Test;
 
@@ -48,4 +50,18 @@ public class ShellTest {
 			fail("testGetStdErr throws exception");
 		}
 	}
+
+	@Test
+	public void testStart() {
+		Shell sh = new Shell();
+		try {
+			Process process = sh.start("echo", "hello");
+			BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+			assertEquals("Stdout of 'echo hello' is read while it runs", "hello", reader.readLine());
+			assertEquals("Exit code of echo is 0", 0, process.waitFor());
+		} catch (IOException | InterruptedException e) {
+			e.printStackTrace();
+			fail("testStart throws exception");
+		}
+	}
 }
@@ -0,0 +1,129 @@
+package com.moonlite.discover;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TcpSweepTest {
+
+	/**
+	 * @return int, a local port that nothing listens on
+	 */
+	private static int closedPort() throws Exception {
+		try (ServerSocket s = new ServerSocket(0)) {
+			return s.getLocalPort();
+		}
+	}
+
+	@Test
+	public void testOpenAndRefused() throws Exception {
+		try (ServerSocket server = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"))) {
+			TcpSweep sweep = new TcpSweep(new int[] {server.getLocalPort()}, 1000, 16);
+			Host[] hosts = sweep.sweep("127.0.0.1");
+			assertArrayEquals(new Host[] {new Host("127.0.0.1", null, null)}, hosts);
+
+			// a refused connection still means the host is there
+			sweep = new TcpSweep(new int[] {closedPort()}, 1000, 16);
+			hosts = sweep.sweep("127.0.0.3 127.0.0.2");
+			assertArrayEquals(new Host[] {new Host("127.0.0.2", null, null), new Host("127.0.0.3", null, null)},
+					hosts);
+			assertTrue(Ping.ping("127.0.0.1"));
+		}
+	}
+
+	@Test
+	public void testNetwork() throws Exception {
+		// every loopback address refuses; fewer probes in flight than addresses
+		TcpSweep sweep = new TcpSweep(new int[] {closedPort(), closedPort()}, 1000, 100);
+		long start = System.currentTimeMillis();
+		Host[] hosts = sweep.sweep("127.1.0.0/22");
+		assertTrue(System.currentTimeMillis() - start < 5000);
+		assertTrue(String.valueOf(hosts.length), hosts.length >= 1022);
+		assertTrue(Arrays.asList(hosts).contains(new Host("127.1.0.1", null, null)));
+		assertTrue(Arrays.asList(hosts).contains(new Host("127.1.3.254", null, null)));
+		for (int i = 1; i < hosts.length; i++) {
+			assertTrue(ScanDiff.BY_ADDRESS.compare(hosts[i - 1], hosts[i]) < 0);
+			assertNull(hosts[i].name);
+		}
+	}
+
+	@Test
+	public void testDeadline() throws Exception {
+		// a listener whose backlog is full drops the SYN of the probe, which never gets an answer
+		InetAddress local = InetAddress.getByName("127.0.0.1");
+		List<SocketChannel> backlog = new ArrayList<>();
+		try (ServerSocket server = new ServerSocket(0, 1, local)) {
+			for (int i = 0; i < 8; i++) {
+				SocketChannel channel = SocketChannel.open();
+				channel.configureBlocking(false);
+				channel.connect(new InetSocketAddress(local, server.getLocalPort()));
+				backlog.add(channel);
+			}
+			TcpSweep sweep = new TcpSweep(new int[] {server.getLocalPort()}, 300, 16);
+			long start = System.currentTimeMillis();
+			assertEquals(0, sweep.sweep("127.0.0.1").length);
+			long elapsed = System.currentTimeMillis() - start;
+			assertTrue(String.valueOf(elapsed), elapsed >= 250 && elapsed < 3000);
+		} finally {
+			for (SocketChannel channel: backlog) {
+				channel.close();
+			}
+		}
+		assertNull(new TcpSweep().discover("no-such-host.invalid"));
+	}
+
+	@Test
+	public void testFileDescriptorLimit() throws Exception {
+		assertTrue(TcpSweep.defaultMaxInFlight() <= 4096);
+		// 2048 probes in flight do not fit in 256 file descriptors: the probes wait for sockets, rather
+		// than count as dead hosts
+		assertEquals("1024", runLimited(256, TcpSweepTest.class, "127.4.0.0/22", String.valueOf(closedPort())));
+	}
+
+	/**
+	 * Run the main of a test class in a JVM limited to a number of open files.
+	 * @return String, the last line of its stdout
+	 */
+	static String runLimited (int maxFiles, Class<?> main, String... args) throws Exception {
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		StringBuilder command = new StringBuilder("ulimit -n " + maxFiles + " && exec '" + java + "' -cp '"
+				+ System.getProperty("java.class.path") + "' " + main.getName());
+		for (String arg: args) {
+			command.append(' ').append(arg);
+		}
+		Process process = new ProcessBuilder("sh", "-c", command.toString()).redirectErrorStream(true).start();
+		String last = null;
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				last = line;
+			}
+		}
+		assertTrue(process.waitFor(30, TimeUnit.SECONDS));
+		assertEquals(last, 0, process.exitValue());
+		return last;
+	}
+
+	/***
+	 * For testFileDescriptorLimit: the number of hosts found on a network, 2048 probes at a time.
+	 * @param args String[] network port
+	 */
+	public static void main (String[] args) throws Exception {
+		int[] ports = {Integer.parseInt(args[1])};
+		// the JDK opens descriptors of its own the first time a socket is refused and closed, which
+		// fails if they are all taken
+		new TcpSweep(ports, 1000, 1).sweep("127.0.0.1");
+		System.out.println(new TcpSweep(ports, 1000, 2048).sweep(args[0]).length);
+	}
+}
@@ -0,0 +1,59 @@
+package com.moonlite.discover;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TwoStageScanTest {
+
+	@Test
+	public void testStages() {
+		Host[] live = {
+				new Host("10.0.0.9", "nine", null),
+				new Host("10.0.0.10", "ten", null),
+				new Host("10.0.0.2", null, null),
+				new Host("10.0.0.3", null, null),
+				new Host("10.0.0.2", null, null)};
+		List<String> batches = Collections.synchronizedList(new ArrayList<>());
+		Discover fingerprint = target -> {
+			String batch = (String) target;
+			batches.add(batch);
+			if (batch.contains("10.0.0.9")) {
+				// this batch fails
+				return null;
+			}
+			List<Host> result = new ArrayList<>();
+			for (String address: batch.split(" ")) {
+				result.add(new Host(address, "host-" + address, "Linux"));
+			}
+			// a host not found live is ignored
+			result.add(new Host("10.0.0.200", null, "Linux"));
+			return result.toArray(new Host[result.size()]);
+		};
+		TwoStageScan scan = new TwoStageScan(target -> live, fingerprint, 2, 2);
+		Host[] hosts = scan.discover("10.0.0.0/24");
+		Collections.sort(batches);
+		assertEquals(Arrays.asList("10.0.0.2 10.0.0.3", "10.0.0.9 10.0.0.10"), batches);
+		assertArrayEquals(new Host[] {
+				new Host("10.0.0.2", "host-10.0.0.2", "Linux"),
+				new Host("10.0.0.3", "host-10.0.0.3", "Linux"),
+				new Host("10.0.0.9", "nine", null),
+				new Host("10.0.0.10", "ten", null)}, hosts);
+		assertEquals(Arrays.asList("10.0.0.9 10.0.0.10"), scan.getFailedBatches());
+	}
+
+	@Test
+	public void testNothingLive() {
+		Discover fingerprint = target -> {
+			fail("nothing to fingerprint");
+			return null;
+		};
+		assertEquals(0, new TwoStageScan(target -> new Host[0], fingerprint, 10, 1).discover("10.0.0.0/24").length);
+		assertNull(new TwoStageScan(target -> null, fingerprint, 10, 1).discover("10.0.0.0/24"));
+	}
+}
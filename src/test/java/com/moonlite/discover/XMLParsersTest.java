@@ -0,0 +1,81 @@
+package com.moonlite.discover;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class XMLParsersTest {
+
+	private String getFilePath(String fileName) {
+		ClassLoader classLoader = getClass().getClassLoader();
+		String dirPath = getClass().getPackage().getName().replace('.', '/');
+		return classLoader.getResource(dirPath + "/" + fileName).getFile();
+	}
+
+	/**
+	 * An nmap file whose DOCTYPE refers to a DTD that cannot be fetched, and defines an external entity.
+	 */
+	private String writeExternalDTD() throws IOException {
+		File f = File.createTempFile("nmap", ".xml");
+		f.deleteOnExit();
+		try (PrintWriter out = new PrintWriter(f, "UTF-8")) {
+			out.println("<?xml version=\"1.0\"?>");
+			out.println("<!DOCTYPE nmaprun SYSTEM \"http://nmap.invalid/nmap.dtd\" [");
+			out.println("  <!ENTITY secret SYSTEM \"file:///nonexistent/secret\">");
+			out.println("]>");
+			out.println("<nmaprun>");
+			out.println("<host><address addr=\"10.0.0.1\" addrtype=\"ipv4\"/>");
+			out.println("<hostnames><hostname name=\"a\" type=\"PTR\"/></hostnames></host>");
+			out.println("</nmaprun>");
+		}
+		return f.getAbsolutePath();
+	}
+
+	@Test
+	public void testReuse() throws Exception {
+		String file = getFilePath("sample-nmap.xml");
+		new NMap().readXMLFile(file);
+		new NMapJDOM().readXMLFile(file);
+		long hits = XMLParsers.getHits();
+		long misses = XMLParsers.getMisses();
+		for (int i = 0; i < 3; i++) {
+			new NMap().readXMLFile(file);
+			new NMapJDOM().readXMLFile(file);
+		}
+		assertEquals(hits + 6, XMLParsers.getHits());
+		assertEquals(misses, XMLParsers.getMisses());
+		assertSame(XMLParsers.documentBuilder(), XMLParsers.documentBuilder());
+		assertSame(XMLParsers.saxBuilder(), XMLParsers.saxBuilder());
+	}
+
+	@Test
+	public void testPerThread() throws Exception {
+		List<Object> builders = new ArrayList<>();
+		Thread t = new Thread(() -> {
+			try {
+				builders.add(XMLParsers.documentBuilder());
+			} catch (Exception e) {
+				builders.add(e);
+			}
+			builders.add(XMLParsers.saxBuilder());
+		});
+		t.start();
+		t.join();
+		assertNotSame(XMLParsers.documentBuilder(), builders.get(0));
+		assertNotSame(XMLParsers.saxBuilder(), builders.get(1));
+	}
+
+	@Test
+	public void testNoExternalDTD() throws Exception {
+		String file = writeExternalDTD();
+		Host expected = new Host("10.0.0.1", "a", null);
+		assertArrayEquals(new Host[] {expected}, new NMap().readXMLFile(file));
+		assertArrayEquals(new Host[] {expected}, new NMapJDOM().readXMLFile(file));
+	}
+}